@@ -0,0 +1,261 @@
+package com.servicecore.cfg;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The hot operations of the configuration package against a {@link SyntheticEnvironment}.
+ * <p>Run with the GC profiler (the <code>jmh</code> Gradle task adds it) to get the allocation rate per operation next to
+ * the time, e.g. <code>gradle jmh -Pjmh.includes=ConfigurationBenchmark -Pjmh.args="-p propertyCount=100000"</code>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigurationBenchmark {
+
+    private static final int TENANT_OVERRIDES = 16;
+
+    @Param({"1000", "10000", "100000"})
+    int propertyCount;
+
+    @Param({"4"})
+    int depth;
+
+    @Param({"1", "4"})
+    int layers;
+
+    private ServiceConfiguration configuration;
+    private ServiceConfiguration instrumentedConfiguration;
+    private ServiceConfigurationGroup rootGroup;
+    private ServiceConfigurationGroup subGroup;
+    private ServiceConfigurationGroup compactGroup;
+    private ServiceConfigurationGroup offHeapGroup;
+    private ServiceConfigurationGroup tenantGroup;
+    private Map<String,String> tenantOverrides;
+    private String[] rootRelativeNames;
+    private String[] names;
+    private String[] intNames;
+    private String[] doubleNames;
+    private String[] listNames;
+    private String[] missingNames;
+    private String[] groupPaths;
+    private String[] breakOutPaths;
+
+    @Setup
+    public void setup() {
+        SyntheticEnvironment environment = new SyntheticEnvironment(this.propertyCount, this.depth, this.layers, 42L);
+        this.configuration = new ServiceConfiguration(environment.getEnvironment());
+        this.instrumentedConfiguration = new ServiceConfiguration(environment.getEnvironment());
+        this.instrumentedConfiguration.setMetrics(new ConfigurationMetrics(16));
+        this.names = environment.getNames();
+        this.intNames = environment.getIntNames();
+        this.doubleNames = environment.getDoubleNames();
+        this.listNames = environment.getListNames();
+        this.groupPaths = environment.getGroupPaths();
+        this.missingNames = new String[this.names.length];
+        for(int i=0; i<this.names.length; i++) {
+            this.missingNames[i] = this.names[i]+".missing";
+        }
+        this.breakOutPaths = new String[environment.getFanOut()];
+        for(int i=0; i<this.breakOutPaths.length; i++) {
+            this.breakOutPaths[i] = "g"+i;
+        }
+        this.rootGroup = this.configuration.getStringGroup(SyntheticEnvironment.ROOT);
+        this.subGroup = this.configuration.getStringGroup(this.groupPaths[0]);
+        this.compactGroup = this.rootGroup.compact();
+        this.offHeapGroup = this.rootGroup.offHeap();
+        this.rootRelativeNames = new String[this.names.length];
+        for(int i=0; i<this.names.length; i++) {
+            this.rootRelativeNames[i] = this.names[i].substring(SyntheticEnvironment.ROOT.length()+1);
+        }
+        this.tenantOverrides = new HashMap<String, String>();
+        for(int i=0; i<TENANT_OVERRIDES; i++) {
+            this.tenantOverrides.put(this.rootRelativeNames[(i*7919) % this.rootRelativeNames.length], "tenant"+i);
+        }
+        this.tenantGroup = this.configuration.overlay(SyntheticEnvironment.ROOT, this.tenantOverrides);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String pick(String[] values) {
+            return values[(this.next++ & 0x7fffffff) % values.length];
+        }
+    }
+
+    @Benchmark
+    public String getPropertyValue(Cursor cursor) {
+        return this.configuration.getPropertyValue(cursor.pick(this.names));
+    }
+
+    @Benchmark
+    public String getPropertyValueMissing(Cursor cursor) {
+        return this.configuration.getPropertyValue(cursor.pick(this.missingNames));
+    }
+
+    /**
+     * Probing for an optional override which is not set, the most common read of some services.
+     */
+    @Benchmark
+    public boolean containsMissing(Cursor cursor) {
+        return this.configuration.contains(cursor.pick(this.missingNames));
+    }
+
+    @Benchmark
+    public Integer getInteger(Cursor cursor) {
+        return this.configuration.getInteger(cursor.pick(this.intNames));
+    }
+
+    /**
+     * {@link #getInteger(Cursor)} with sampled {@link ConfigurationMetrics}, for the cost of instrumentation.
+     */
+    @Benchmark
+    public Integer getIntegerInstrumented(Cursor cursor) {
+        return this.instrumentedConfiguration.getInteger(cursor.pick(this.intNames));
+    }
+
+    /**
+     * Converting a malformed integer, which used to throw a {@link NumberFormatException} on every uncached read.
+     */
+    @Benchmark
+    public ParsedValue convertInvalidInteger() {
+        return AbstractServiceConfiguration.convert("12x", TypedValueCache.Type.INTEGER);
+    }
+
+    @Benchmark
+    public ParsedValue convertDouble() {
+        return AbstractServiceConfiguration.convert("1234.5678", TypedValueCache.Type.DOUBLE);
+    }
+
+    @Benchmark
+    public ParsedValue convertDuration() {
+        return AbstractServiceConfiguration.convert("500ms", TypedValueCache.Type.DURATION);
+    }
+
+    @Benchmark
+    public Double getDouble(Cursor cursor) {
+        return this.configuration.getDouble(cursor.pick(this.doubleNames));
+    }
+
+    @Benchmark
+    public List<String> getStringList(Cursor cursor) {
+        return this.configuration.getStringList(cursor.pick(this.listNames));
+    }
+
+    @Benchmark
+    public List<String> getTokenList(Cursor cursor) {
+        return this.configuration.getTokenList(cursor.pick(this.listNames));
+    }
+
+    @Benchmark
+    public boolean containsToken(Cursor cursor) {
+        return this.configuration.containsToken(cursor.pick(this.listNames), ",", "host500");
+    }
+
+    @Benchmark
+    public ServiceConfigurationGroup getStringGroup(Cursor cursor) {
+        return this.configuration.getStringGroup(cursor.pick(this.groupPaths));
+    }
+
+    @Benchmark
+    public ServiceConfigurationGroup getAll() {
+        return this.configuration.getAll();
+    }
+
+    @Benchmark
+    public ServiceConfigurationGroup breakOut(Cursor cursor) {
+        return this.rootGroup.breakOut(cursor.pick(this.breakOutPaths));
+    }
+
+    @Benchmark
+    public Map<String,ServiceConfigurationGroup> breakDown() {
+        return this.rootGroup.breakDownToMap();
+    }
+
+    @Benchmark
+    public Map<String,ServiceConfigurationGroup> breakDownPrefix(Cursor cursor) {
+        return this.rootGroup.breakDownToMap(cursor.pick(this.breakOutPaths));
+    }
+
+    @Benchmark
+    public String compactGetPropertyValue(Cursor cursor) {
+        return this.compactGroup.getPropertyValue(cursor.pick(this.rootRelativeNames));
+    }
+
+    @Benchmark
+    public String offHeapGetPropertyValue(Cursor cursor) {
+        return this.offHeapGroup.getPropertyValue(cursor.pick(this.rootRelativeNames));
+    }
+
+    @Benchmark
+    public Map<String,ServiceConfigurationGroup> offHeapBreakDown() {
+        return this.offHeapGroup.breakDownToMap();
+    }
+
+    @Benchmark
+    public Map<String,ServiceConfigurationGroup> compactBreakDown() {
+        return this.compactGroup.breakDownToMap();
+    }
+
+    @Benchmark
+    public String overlayGetPropertyValue(Cursor cursor) {
+        return this.tenantGroup.getPropertyValue(cursor.pick(this.rootRelativeNames));
+    }
+
+    /**
+     * Creating one tenant's view of the configuration, which should not depend on the number of properties.
+     */
+    @Benchmark
+    public ServiceConfigurationGroup createOverlay() {
+        return this.configuration.overlay(SyntheticEnvironment.ROOT, this.tenantOverrides);
+    }
+
+    /**
+     * A request reading a few related properties from a pinned snapshot, which replaces copying the group with
+     * {@link ServiceConfigurationGroup#toMap()}; see {@link #copiedGroupRead(Cursor)}.
+     */
+    @Benchmark
+    public Integer pinnedGroupRead(Cursor cursor) {
+        try(ConfigSnapshot snapshot = this.configuration.pin()) {
+            ServiceConfigurationGroup group = snapshot.getStringGroup(cursor.pick(this.groupPaths));
+            return group.size()+snapshot.getInteger(cursor.pick(this.intNames));
+        }
+    }
+
+    @Benchmark
+    public Integer copiedGroupRead(Cursor cursor) {
+        ServiceConfigurationGroup group = new ServiceConfigurationGroup("copy", this.configuration.getStringGroup(cursor.pick(this.groupPaths)).toMap());
+        return group.size()+this.configuration.getInteger(cursor.pick(this.intNames));
+    }
+
+    @Benchmark
+    public String toStringMasked() {
+        return this.subGroup.toString();
+    }
+
+    /**
+     * Re-flattening the whole environment, which every read used to pay for before the snapshot.
+     */
+    @Benchmark
+    public ConfigurationChangeEvent refresh() {
+        return this.configuration.refresh();
+    }
+}
@@ -0,0 +1,110 @@
+package com.servicecore.cfg;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many readers and one writer sharing a group: the plain {@link ServiceConfigurationGroup} behind a read/write lock, the
+ * way callers have to guard it today, against the lock-free {@link ConcurrentServiceConfigurationGroup}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class GroupContentionBenchmark {
+
+    @Param({"100", "10000"})
+    int size;
+
+    @Param({"locked", "concurrent"})
+    String mode;
+
+    /** Number of properties each write replaces. */
+    @Param({"8"})
+    int batch;
+
+    private ServiceConfigurationGroup group;
+    private ReadWriteLock lock;
+    private String[] names;
+    private boolean locked;
+
+    @Setup
+    public void setup() {
+        Map<String,String> props = new HashMap<String, String>();
+        this.names = new String[this.size];
+        for(int i=0; i<this.size; i++) {
+            this.names[i] = "pool.db"+(i%50)+".setting"+i;
+            props.put(this.names[i], Integer.toString(i));
+        }
+        this.locked = "locked".equals(this.mode);
+        this.lock = new ReentrantReadWriteLock();
+        this.group = (this.locked ? new ServiceConfigurationGroup("bench", props) : new ConcurrentServiceConfigurationGroup("bench", props));
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(7)
+    public String read(Cursor cursor) {
+        String name = this.names[(cursor.next++ & 0x7fffffff) % this.names.length];
+        if(!this.locked) {
+            return this.group.getPropertyValue(name);
+        }
+        this.lock.readLock().lock();
+        try {
+            return this.group.getPropertyValue(name);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public void write(Cursor cursor) {
+        Map<String,String> updates = new HashMap<String, String>();
+        for(int i=0; i<this.batch; i++) {
+            updates.put(this.names[(cursor.next++ & 0x7fffffff) % this.names.length], Integer.toString(cursor.next));
+        }
+        if(!this.locked) {
+            this.group.addAll(updates);
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.group.addAll(updates);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(8)
+    public String readOnly(Cursor cursor) {
+        return this.read(cursor);
+    }
+}
@@ -0,0 +1,483 @@
+package com.servicecore.cfg;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline load and soak test of a {@link ServiceConfiguration} over a {@link SyntheticEnvironment}, for finding the
+ * scaling limits of a configuration shape before it is rolled out.
+ * <p>Worker threads run a weighted mix of operations against the configuration while a refresher thread changes the
+ * environment and refreshes it at a fixed period.  Every operation is timed; the harness reports throughput and latency
+ * percentiles per operation, every <code>report</code> interval and for the whole run, followed by the garbage collections
+ * and the bytes the workers allocated per operation.  The run fails if any operation throws.</p>
+ * <p>Run it with <code>gradle loadTest -PloadTest.args="threads=16 duration=10m"</code>, and JVM options such as the heap
+ * size with <code>-PloadTest.jvmArgs</code>.  The arguments, all optional:</p>
+ * <pre>
+ * keys=100000                       Number of properties.
+ * depth=4                           Key segments below the root, the leaf included.
+ * layers=2                          Composite property sources.
+ * types=int,dbl,flag,list,str       Value types, out of {@link SyntheticEnvironment#TYPES}.
+ * threads=8                         Worker threads.
+ * warmup=10s                        Run before measuring; durations take ms, s, m or h.
+ * duration=30s                      Measured run.  Hours for a soak test.
+ * report=10s                        Interval of the intermediate reports.
+ * refresh=1s                        Refresh period, 0 for none.
+ * changes=100                       Properties changed before every refresh.
+ * mix=read:60,typed:25,group:8,breakDown:2,pin:5
+ *                                   Relative weights of the worker operations; miss, probing
+ *                                   for an override which is not set, is another one.
+ * seed=42                           Seed of the environment and the workload.
+ * </pre>
+ */
+public final class LoadTest {
+
+    /** The timed operations.  Workers pick all of them but {@link #REFRESH}, which the refresher thread runs. */
+    enum Operation {
+        /** <code>getString</code> of a random property. */
+        READ("read"),
+        /** A typed getter of a random property of that type. */
+        TYPED("typed"),
+        /** <code>getStringGroup</code> of a path one level below the root. */
+        GROUP("group"),
+        /** <code>breakDownToMap</code> of such a group. */
+        BREAK_DOWN("breakDown"),
+        /** A request over a pinned snapshot: a group and a few reads from it. */
+        PIN("pin"),
+        /** <code>contains</code> of an override which is not set, such as <code>cfg.g1.int5.override</code>. */
+        MISS("miss"),
+        REFRESH("refresh");
+
+        final String argName;
+
+        Operation(String argName) {
+            this.argName = argName;
+        }
+    }
+
+    private final Map<String,String> args;
+    private final SyntheticEnvironment environment;
+    private final ServiceConfiguration configuration;
+    private final String[] names;
+    private final String[] groupPaths;
+    private final String[][] typedNames;
+    private final String[] types;
+    private final Operation[] schedule;
+    private final Map<Operation,Histogram> histograms = new EnumMap<Operation, Histogram>(Operation.class);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    LoadTest(Map<String,String> args) {
+        this.args = args;
+        List<String> typeList = Arrays.asList(this.arg("types", "int,dbl,flag,list,str").split(","));
+        long start = System.nanoTime();
+        this.environment = new SyntheticEnvironment(this.intArg("keys", 100000), this.intArg("depth", 4), this.intArg("layers", 2), typeList, this.longArg("seed", 42L));
+        this.configuration = new ServiceConfiguration(this.environment.getEnvironment());
+        this.configuration.refresh();
+        System.out.printf(Locale.ROOT, "Built %d properties in %d ms.%n", this.configuration.getAll().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
+        this.names = this.environment.getNames();
+        this.groupPaths = (this.environment.getGroupPaths().length==0 ? new String[] {SyntheticEnvironment.ROOT} : this.environment.getGroupPaths());
+        this.types = typeList.toArray(new String[typeList.size()]);
+        this.typedNames = new String[this.types.length][];
+        for(int i=0; i<this.types.length; i++) {
+            this.typedNames[i] = this.environment.getNames(this.types[i]);
+        }
+        this.schedule = schedule(this.arg("mix", "read:60,typed:25,group:8,breakDown:2,pin:5"));
+        for(Operation operation : Operation.values()) {
+            this.histograms.put(operation, new Histogram());
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Map<String,String> args = new LinkedHashMap<String, String>();
+        for(String arg : argv) {
+            int separatorIdx = arg.indexOf('=');
+            if(separatorIdx<=0) {
+                throw new IllegalArgumentException("Arguments look like name=value. argument="+arg);
+            }
+            args.put(arg.substring(0, separatorIdx), arg.substring(separatorIdx+1));
+        }
+        System.exit(new LoadTest(args).run() ? 0 : 1);
+    }
+
+    /**
+     * @return <code>true</code> if no operation failed.
+     */
+    boolean run() throws InterruptedException {
+        int threads = this.intArg("threads", 8);
+        long warmup = this.durationArg("warmup", "10s");
+        long duration = this.durationArg("duration", "30s");
+        long report = this.durationArg("report", "10s");
+        List<Thread> workers = new ArrayList<Thread>();
+        CountDownLatch started = new CountDownLatch(threads);
+        for(int i=0; i<threads; i++) {
+            Random random = new Random(this.longArg("seed", 42L)+i);
+            Thread worker = new Thread(() -> this.work(random, started), "load-test-worker-"+i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        Thread refresher = new Thread(this::refreshLoop, "load-test-refresher");
+        refresher.setDaemon(true);
+        refresher.start();
+        started.await();
+
+        System.out.printf(Locale.ROOT, "Warming up for %d s with %d threads.%n", TimeUnit.NANOSECONDS.toSeconds(warmup), threads);
+        TimeUnit.NANOSECONDS.sleep(warmup);
+        ResourceUsage usageBefore = new ResourceUsage(workers);
+        Map<Operation,long[]> total = this.snapshotHistograms();
+        Map<Operation,long[]> interval = total;
+        this.measuring = true;
+        long start = System.nanoTime();
+        long end = start+duration;
+        long intervalStart = start;
+        while(this.failure.get()==null) {
+            long now = System.nanoTime();
+            if(now>=end) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(report, end-now));
+            now = System.nanoTime();
+            if(now<end) {
+                Map<Operation,long[]> current = this.snapshotHistograms();
+                System.out.printf(Locale.ROOT, "%n-- after %d s --%n", TimeUnit.NANOSECONDS.toSeconds(now-start));
+                this.printLatencies(interval, current, now-intervalStart);
+                interval = current;
+                intervalStart = now;
+            }
+        }
+        this.measuring = false;
+        long elapsed = System.nanoTime()-start;
+        this.stopped = true;
+        ResourceUsage usageAfter = new ResourceUsage(workers);
+        for(Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        refresher.join(TimeUnit.SECONDS.toMillis(10));
+
+        Map<Operation,long[]> current = this.snapshotHistograms();
+        System.out.printf(Locale.ROOT, "%n== total over %d s ==%n", TimeUnit.NANOSECONDS.toSeconds(elapsed));
+        this.printLatencies(total, current, elapsed);
+        long workerOperations = 0;
+        for(Operation operation : Operation.values()) {
+            if(operation!=Operation.REFRESH) {
+                workerOperations += Histogram.count(current.get(operation))-Histogram.count(total.get(operation));
+            }
+        }
+        usageAfter.printSince(usageBefore, workerOperations);
+        System.out.printf(Locale.ROOT, "snapshot pins left open %d%n", this.configuration.getPinCount());
+        Throwable failed = this.failure.get();
+        if(failed!=null) {
+            System.out.println("FAILED");
+            failed.printStackTrace(System.out);
+            return false;
+        }
+        return true;
+    }
+
+    private void work(Random random, CountDownLatch started) {
+        started.countDown();
+        while(!this.stopped) {
+            Operation operation = this.schedule[random.nextInt(this.schedule.length)];
+            long start = System.nanoTime();
+            try {
+                this.execute(operation, random);
+            } catch(Throwable thrown) {
+                this.fail(thrown);
+                return;
+            }
+            long nanos = System.nanoTime()-start;
+            if(this.measuring) {
+                this.histograms.get(operation).record(nanos);
+            }
+        }
+    }
+
+    private Object execute(Operation operation, Random random) {
+        switch(operation) {
+            case READ:
+                return this.configuration.getString(pick(this.names, random));
+            case TYPED:
+                return this.readTyped(this.configuration, random);
+            case GROUP:
+                return this.configuration.getStringGroup(pick(this.groupPaths, random));
+            case BREAK_DOWN:
+                return this.configuration.getStringGroup(pick(this.groupPaths, random)).breakDownToMap();
+            case PIN:
+                try(ConfigSnapshot snapshot = this.configuration.pin()) {
+                    ServiceConfigurationGroup group = snapshot.getStringGroup(pick(this.groupPaths, random));
+                    this.readTyped(snapshot, random);
+                    return group.size()+snapshot.getString(pick(this.names, random));
+                }
+            case MISS:
+                return this.configuration.contains(pick(this.names, random)+".override");
+            default:
+                throw new IllegalStateException("Not a worker operation. operation="+operation);
+        }
+    }
+
+    private Object readTyped(AbstractServiceConfiguration source, Random random) {
+        int typeIdx = random.nextInt(this.types.length);
+        String[] candidates = this.typedNames[typeIdx];
+        if(candidates.length==0) {
+            return null;
+        }
+        String name = pick(candidates, random);
+        switch(this.types[typeIdx]) {
+            case "int":
+                return source.getInteger(name);
+            case "dbl":
+                return source.getDouble(name);
+            case "flag":
+                return source.getBoolean(name);
+            case "list":
+                return source.getTokenList(name);
+            case "dur":
+                return source.getDuration(name);
+            case "size":
+                return source.getSize(name);
+            default:
+                return source.getString(name);
+        }
+    }
+
+    private void refreshLoop() {
+        long period = this.durationArg("refresh", "1s");
+        int changes = this.intArg("changes", 100);
+        Random random = new Random(this.longArg("seed", 42L)-1);
+        if(period==0L) {
+            return;
+        }
+        try {
+            while(!this.stopped) {
+                TimeUnit.NANOSECONDS.sleep(period);
+                this.environment.mutate(changes, random);
+                long start = System.nanoTime();
+                this.configuration.refresh();
+                long nanos = System.nanoTime()-start;
+                if(this.measuring) {
+                    this.histograms.get(Operation.REFRESH).record(nanos);
+                }
+            }
+        } catch(InterruptedException iEx) {
+            Thread.currentThread().interrupt();
+        } catch(Throwable thrown) {
+            this.fail(thrown);
+        }
+    }
+
+    private void fail(Throwable thrown) {
+        if(this.failure.compareAndSet(null, thrown)) {
+            this.stopped = true;
+        }
+    }
+
+    private Map<Operation,long[]> snapshotHistograms() {
+        Map<Operation,long[]> result = new EnumMap<Operation, long[]>(Operation.class);
+        for(Map.Entry<Operation,Histogram> entry : this.histograms.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+
+    private void printLatencies(Map<Operation,long[]> before, Map<Operation,long[]> after, long nanos) {
+        System.out.printf(Locale.ROOT, "%-10s %12s %12s %10s %10s %10s %10s %10s%n", "operation", "count", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for(Operation operation : Operation.values()) {
+            long[] counts = Histogram.difference(after.get(operation), before.get(operation));
+            long count = Histogram.count(counts);
+            if(count==0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-10s %12d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.argName, count, count*1e9/nanos,
+                    Histogram.percentile(counts, 0.5)/1e3, Histogram.percentile(counts, 0.9)/1e3, Histogram.percentile(counts, 0.99)/1e3,
+                    Histogram.percentile(counts, 0.999)/1e3, Histogram.percentile(counts, 1.0)/1e3);
+        }
+    }
+
+    /**
+     * @return The worker operations, each repeated as often as its weight.
+     */
+    private static Operation[] schedule(String mix) {
+        List<Operation> result = new ArrayList<Operation>();
+        for(String part : mix.split(",")) {
+            String[] weighted = part.trim().split(":");
+            Operation operation = null;
+            for(Operation candidate : Operation.values()) {
+                if(candidate!=Operation.REFRESH && candidate.argName.equals(weighted[0])) {
+                    operation = candidate;
+                }
+            }
+            if(operation==null || weighted.length!=2) {
+                throw new IllegalArgumentException("Mix entries look like operation:weight, with operations read, typed, group, breakDown, pin and miss. entry="+part);
+            }
+            for(int i=Integer.parseInt(weighted[1]); i>0; i--) {
+                result.add(operation);
+            }
+        }
+        if(result.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operations. mix="+mix);
+        }
+        return result.toArray(new Operation[result.size()]);
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String arg(String name, String defaultValue) {
+        String value = this.args.get(name);
+        return (value==null ? defaultValue : value);
+    }
+
+    private int intArg(String name, int defaultValue) {
+        return Integer.parseInt(this.arg(name, Integer.toString(defaultValue)));
+    }
+
+    private long longArg(String name, long defaultValue) {
+        return Long.parseLong(this.arg(name, Long.toString(defaultValue)));
+    }
+
+    /**
+     * @return The duration in nanoseconds, parsed like {@link AbstractServiceConfiguration#getDuration(String)}.
+     */
+    private long durationArg(String name, String defaultValue) {
+        ParsedValue parsed = ValueParser.parseDuration(this.arg(name, defaultValue));
+        if(!parsed.isValid()) {
+            throw new IllegalArgumentException("Not a duration. name="+name+", value="+this.arg(name, defaultValue));
+        }
+        return parsed.longValue;
+    }
+
+    /**
+     * Latencies in log-linear buckets: 16 buckets per power of two, so every percentile is within about 6% of the real one.
+     * Recorded from many threads at once; readers take snapshots and subtract them for intervals.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS+(63-SUB_BUCKET_BITS)*SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Histogram() {
+            for(int i=0; i<this.buckets.length; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            this.buckets[index(Math.max(0L, nanos))].increment();
+        }
+
+        long[] snapshot() {
+            long[] counts = new long[BUCKETS];
+            for(int i=0; i<counts.length; i++) {
+                counts[i] = this.buckets[i].sum();
+            }
+            return counts;
+        }
+
+        static int index(long value) {
+            if(value<SUB_BUCKETS) {
+                return (int)value;
+            }
+            int shift = 63-Long.numberOfLeadingZeros(value)-SUB_BUCKET_BITS;
+            return SUB_BUCKETS+shift*SUB_BUCKETS+(int)((value >>> shift) & (SUB_BUCKETS-1));
+        }
+
+        /**
+         * @return The largest value counted in the bucket.
+         */
+        static long highestValue(int index) {
+            if(index<SUB_BUCKETS) {
+                return index;
+            }
+            int shift = (index-SUB_BUCKETS) / SUB_BUCKETS;
+            long lowest = (long)(SUB_BUCKETS+(index-SUB_BUCKETS) % SUB_BUCKETS) << shift;
+            return lowest+(1L << shift)-1;
+        }
+
+        static long[] difference(long[] after, long[] before) {
+            long[] result = new long[after.length];
+            for(int i=0; i<result.length; i++) {
+                result[i] = after[i]-before[i];
+            }
+            return result;
+        }
+
+        static long count(long[] counts) {
+            long total = 0;
+            for(long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        static long percentile(long[] counts, double percentile) {
+            long rank = Math.max(1L, (long)Math.ceil(count(counts)*percentile));
+            long seen = 0;
+            for(int i=0; i<counts.length; i++) {
+                seen += counts[i];
+                if(seen>=rank) {
+                    return highestValue(i);
+                }
+            }
+            return 0L;
+        }
+    }
+
+    /**
+     * Garbage collections, and the bytes the worker threads allocated, up to one point in time.
+     */
+    private static final class ResourceUsage {
+        private final Map<String,long[]> collections = new LinkedHashMap<String, long[]>();
+        private final long allocatedBytes;
+
+        ResourceUsage(List<Thread> workers) {
+            for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                this.collections.put(collector.getName(), new long[] {collector.getCollectionCount(), collector.getCollectionTime()});
+            }
+            long allocated = -1L;
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if(threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemoryEnabled()) {
+                long[] ids = new long[workers.size()];
+                for(int i=0; i<ids.length; i++) {
+                    ids[i] = workers.get(i).getId();
+                }
+                allocated = 0L;
+                for(long bytes : ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(ids)) {
+                    allocated += Math.max(0L, bytes);
+                }
+            }
+            this.allocatedBytes = allocated;
+        }
+
+        void printSince(ResourceUsage before, long operations) {
+            System.out.println();
+            for(Map.Entry<String,long[]> entry : this.collections.entrySet()) {
+                long[] previous = before.collections.get(entry.getKey());
+                System.out.printf(Locale.ROOT, "gc %-24s collections=%d, timeMs=%d%n", entry.getKey(),
+                        entry.getValue()[0]-previous[0], entry.getValue()[1]-previous[1]);
+            }
+            if(this.allocatedBytes>=0 && before.allocatedBytes>=0 && operations>0) {
+                long allocated = this.allocatedBytes-before.allocatedBytes;
+                System.out.printf(Locale.ROOT, "workers allocated %d MB, %.0f bytes/op%n", allocated >> 20, (double)allocated/operations);
+            }
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.out.printf(Locale.ROOT, "heap used %d MB%n", memory.getHeapMemoryUsage().getUsed() >> 20);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.env.CompositePropertySource;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * Generates a Spring environment shaped like the ones our services get from the Spring Cloud Config server.
+ * <p>Keys look like <code>cfg.g3.g0.g7.int12</code>: <code>depth</code> segments below the root, spread evenly so every
+ * level has about the same fan-out.  The leaf names tell the value type: <code>int</code>, <code>dbl</code>,
+ * <code>flag</code>, <code>list</code> (comma separated), <code>str</code>, <code>dur</code> (e.g. <code>250ms</code>)
+ * and <code>size</code> (e.g. <code>64MB</code>); the types take turns, and every twentieth key is a
+ * <code>password</code>.  The properties are split over <code>layers</code> {@link CompositePropertySource}s of two map
+ * sources each, and a tenth of the keys are overridden again by the top layer so first-source-wins has work to do.</p>
+ * <p>{@link #mutate(int, Random)} changes values in the top layer, the way the Spring Cloud Config server does, so a
+ * refresh has changes to find.</p>
+ */
+public class SyntheticEnvironment {
+
+    public static final String ROOT = "cfg";
+
+    /** The value types of the constructor without types. */
+    public static final List<String> DEFAULT_TYPES = Collections.unmodifiableList(Arrays.asList("int", "dbl", "flag", "list", "str"));
+
+    /** Every value type. */
+    public static final List<String> TYPES = Collections.unmodifiableList(Arrays.asList("int", "dbl", "flag", "list", "str", "dur", "size"));
+
+    private final ConfigurableEnvironment environment;
+    private final List<String> types;
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String,List<String>> namesByType = new LinkedHashMap<String, List<String>>();
+    private final List<String> groupPaths = new ArrayList<String>();
+    /** The top layer, the only map changed after the environment was built. */
+    private final Map<String,Object> overrides = new ConcurrentHashMap<String, Object>();
+    private final int fanOut;
+
+    /**
+     * @param propertyCount Number of distinct keys.
+     * @param depth Number of key segments below the root, the leaf included.  At least 1.
+     * @param layers Number of composite property sources.  At least 1.
+     * @param seed Seed for the values, so runs are repeatable.
+     */
+    public SyntheticEnvironment(int propertyCount, int depth, int layers, long seed) {
+        this(propertyCount, depth, layers, DEFAULT_TYPES, seed);
+    }
+
+    /**
+     * @param types The value types to generate, out of {@link #TYPES}.
+     */
+    public SyntheticEnvironment(int propertyCount, int depth, int layers, List<String> types, long seed) {
+        if(types.isEmpty() || !TYPES.containsAll(types)) {
+            throw new IllegalArgumentException("Unknown value types. types="+types+", known="+TYPES);
+        }
+        this.types = new ArrayList<String>(types);
+        for(String type : this.types) {
+            this.namesByType.put(type, new ArrayList<String>());
+        }
+        this.fanOut = Math.max(2, (int)Math.ceil(Math.pow(propertyCount, 1d/depth)));
+        Random random = new Random(seed);
+        List<Map<String,Object>> maps = new ArrayList<Map<String,Object>>();
+        for(int i=0; i<layers*2; i++) {
+            maps.add(new HashMap<String, Object>());
+        }
+        for(int i=0; i<propertyCount; i++) {
+            String name = this.name(i, depth);
+            Object value = this.value(name, random);
+            maps.get(i % maps.size()).put(name, value);
+            if(i%10==0) {
+                this.overrides.put(name, this.value(name, random));
+            }
+        }
+        this.environment = new StandardEnvironment();
+        MutablePropertySources sources = this.environment.getPropertySources();
+        for(int layer=0; layer<layers; layer++) {
+            CompositePropertySource composite = new CompositePropertySource("layer"+layer);
+            if(layer==0) {
+                composite.addPropertySource(new MapPropertySource("overrides", this.overrides));
+            }
+            composite.addPropertySource(new MapPropertySource("layer"+layer+"a", maps.get(layer*2)));
+            composite.addPropertySource(new MapPropertySource("layer"+layer+"b", maps.get(layer*2+1)));
+            sources.addBefore(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME, composite);
+        }
+        for(int i=0; i<this.fanOut && depth>1; i++) {
+            this.groupPaths.add(ROOT+".g"+i);
+        }
+    }
+
+    private String name(int idx, int depth) {
+        StringBuilder name = new StringBuilder(ROOT);
+        int rest = idx;
+        for(int level=1; level<depth; level++) {
+            name.append(".g").append(rest % this.fanOut);
+            rest /= this.fanOut;
+        }
+        String leaf = (idx%20==0 ? "password" : this.types.get(idx % this.types.size()));
+        name.append('.').append(leaf).append(idx);
+        String result = name.toString();
+        this.names.add(result);
+        if(this.namesByType.containsKey(leaf)) {
+            this.namesByType.get(leaf).add(result);
+        }
+        return result;
+    }
+
+    private Object value(String name, Random random) {
+        if(name.contains(".int")) {
+            return random.nextInt(100000);
+        } else if(name.contains(".dbl")) {
+            return Double.toString(random.nextDouble()*1000);
+        } else if(name.contains(".flag")) {
+            return Boolean.toString(random.nextBoolean());
+        } else if(name.contains(".list")) {
+            StringBuilder list = new StringBuilder();
+            for(int i=0; i<16; i++) {
+                list.append(i==0 ? "" : ",").append("host").append(random.nextInt(1000));
+            }
+            return list.toString();
+        } else if(name.contains(".dur")) {
+            return random.nextInt(10000)+"ms";
+        } else if(name.contains(".size")) {
+            return random.nextInt(1024)+"MB";
+        } else {
+            return Long.toHexString(random.nextLong());
+        }
+    }
+
+    /**
+     * Gives random properties new values in the top layer.  Safe to call while other threads read the environment, but
+     * only from one thread at a time.
+     * @param count The number of properties to change.
+     * @param random Picks the properties and values.
+     */
+    public void mutate(int count, Random random) {
+        for(int i=0; i<count; i++) {
+            String name = this.names.get(random.nextInt(this.names.size()));
+            this.overrides.put(name, this.value(name, random));
+        }
+    }
+
+    public ConfigurableEnvironment getEnvironment() {
+        return this.environment;
+    }
+
+    public String[] getNames() {
+        return this.names.toArray(new String[this.names.size()]);
+    }
+
+    public String[] getIntNames() {
+        return this.getNames("int");
+    }
+
+    public String[] getDoubleNames() {
+        return this.getNames("dbl");
+    }
+
+    public String[] getListNames() {
+        return this.getNames("list");
+    }
+
+    /**
+     * @return The names of the properties of one value type, empty if the type is not generated.
+     */
+    public String[] getNames(String type) {
+        List<String> typeNames = this.namesByType.get(type);
+        return (typeNames==null ? new String[0] : typeNames.toArray(new String[typeNames.size()]));
+    }
+
+    /**
+     * @return The value types generated.
+     */
+    public List<String> getTypes() {
+        return Collections.unmodifiableList(this.types);
+    }
+
+    /**
+     * @return The paths one level below the root, e.g. <code>cfg.g3</code>.
+     */
+    public String[] getGroupPaths() {
+        return this.groupPaths.toArray(new String[this.groupPaths.size()]);
+    }
+
+    /**
+     * @return The number of children of every non-leaf level.
+     */
+    public int getFanOut() {
+        return this.fanOut;
+    }
+}
@@ -1,7 +1,13 @@
 package com.servicecore.cfg;
 
+import java.lang.ref.WeakReference;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,24 +22,94 @@ public abstract class AbstractServiceConfiguration {
 
     private static Logger LOG = LoggerFactory.getLogger(AbstractServiceConfiguration.class);
 
+    private volatile TypedValueCache typedValueCache;
+
+    /** Held weakly, so that the handles nobody refers to any more can be collected; their entries are dropped on the next update. */
+    private final ConcurrentMap<BoundProperty.BindingKey,WeakReference<BoundProperty>> boundProperties = new ConcurrentHashMap<BoundProperty.BindingKey, WeakReference<BoundProperty>>();
+
+    private volatile PropertyRedactor redactor = PropertyRedactor.DEFAULT;
+
+    private volatile ConfigurationMetrics metrics;
+
     abstract public String getPropertyValue(String name);
     
     abstract public boolean contains(String name);
 
     abstract public boolean containsValue(String name);
 
+    /**
+     * @return The redactor which decides which property values are masked when properties are printed.
+     */
+    public PropertyRedactor getRedactor() {
+        return this.redactor;
+    }
+
+    /**
+     * Sets the redactor used when properties are printed.  Groups created from this object afterwards use it too.
+     */
+    public void setRedactor(PropertyRedactor redactor) {
+        this.redactor = (redactor==null ? PropertyRedactor.DEFAULT : redactor);
+    }
+
+    /**
+     * @return The metrics reads are recorded in, or <code>null</code> if they are not instrumented.
+     */
+    public ConfigurationMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Switches instrumentation of reads on, or off with <code>null</code>.  Groups created from this object afterwards
+     * record into the same metrics.
+     */
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The group, set up to use the redactor and metrics of this object.
+     */
+    ServiceConfigurationGroup inheritSettings(ServiceConfigurationGroup group) {
+        group.setRedactor(this.redactor);
+        group.setMetrics(this.metrics);
+        return group;
+    }
+
+    /**
+     * @return The start time of a timed operation, for {@link #stopTimer(ConfigurationMetrics.Operation, long)}.
+     */
+    long startTimer() {
+        ConfigurationMetrics current = this.metrics;
+        return (current==null ? 0L : current.startTimer());
+    }
+
+    void stopTimer(ConfigurationMetrics.Operation operation, long start) {
+        ConfigurationMetrics current = this.metrics;
+        if(current!=null) {
+            current.stopTimer(operation, start);
+        }
+    }
 
     public String getString(String name) {
+        this.recordRead(name);
         return this.getPropertyValue(name);
     }
 
     public String getString(String name, String defaultValue) {
+        this.recordRead(name);
+        return this.resolve(this.getPropertyValue(name), defaultValue);
+    }
+
+    /**
+     * Like {@link #getString(String, String)}, without counting the read in the metrics.  See {@link #loadParsed(String, TypedValueCache.Type)}.
+     */
+    String loadString(String name, String defaultValue) {
         return this.resolve(this.getPropertyValue(name), defaultValue);
     }
 
     public String[] getStringArray(String name) {
         String arrayStr = this.getString(name);
-        return (arrayStr==null ? null : arrayStr.split(","));
+        return (arrayStr==null ? null : StringTokens.split(arrayStr, ","));
     }
 
     /**
@@ -53,20 +129,95 @@ public abstract class AbstractServiceConfiguration {
      */
     public List<String> getStringList(String name, String separator) {
         String arrayStr = this.getString(name);
-        return (arrayStr==null ? null : Arrays.asList(arrayStr.split(separator)));
-    } 
+        if(arrayStr==null) {
+            return null;
+        }
+        return Arrays.asList(StringTokens.isLiteral(separator) ? StringTokens.split(arrayStr, separator) : arrayStr.split(separator));
+    }
+
+    /**
+     * Same as {@link #getTokenList(String, String, boolean)}, splitting on commas and trimming.
+     */
+    public List<String> getTokenList(String name) {
+        return this.getTokenList(name, ",", true);
+    }
+
+    /**
+     * Splits the value of a property on a separator taken literally, not as a regular expression.  The list is cached
+     * until the property values change, so repeated calls cost a lookup.
+     * @param name The name of the property to retrieve.
+     * @param separator The text to split on.  Must not be empty.
+     * @param trim Whether to trim white space off every token and drop the empty ones.  If not, the tokens are those of
+     *             {@link #getStringList(String, String)}.
+     * @return The tokens as an immutable list, or <code>null</code> if the property has no value.
+     */
+    public List<String> getTokenList(String name, String separator, boolean trim) {
+        checkSeparator(separator);
+        this.recordRead(name);
+        Object version = this.getVersion();
+        if(version==null) {
+            String value = this.getPropertyValue(name);
+            return (value==null ? null : StringTokens.tokens(value, separator, trim));
+        }
+        TypedValueCache cache = this.currentCache(version);
+        List<String> tokens = cache.getTokens(name, separator, trim);
+        if(tokens==null) {
+            String value = this.getPropertyValue(name);
+            if(value==null) {
+                return null;
+            }
+            tokens = StringTokens.tokens(value, separator, trim);
+            cache.putTokens(name, separator, trim, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Hands every token of a property value to the consumer, like {@link #getTokenList(String, String, boolean)} would
+     * return them, without creating a string or list for them.  Does nothing if the property has no value.
+     */
+    public void forEachToken(String name, String separator, boolean trim, TokenConsumer consumer) {
+        checkSeparator(separator);
+        String value = this.getString(name);
+        if(value!=null) {
+            StringTokens.forEach(value, separator, trim, consumer);
+        }
+    }
+
+    /**
+     * Checks whether a property lists a token, e.g. for allow lists, without splitting the value up.
+     * @param name The name of the property holding the list.
+     * @param separator The text the list is separated by, taken literally.  Must not be empty.
+     * @param token The token to look for.  Tokens are compared after trimming white space.
+     * @return <code>true</code> if the token is in the list; <code>false</code> if not or if the property has no value.
+     */
+    public boolean containsToken(String name, String separator, String token) {
+        checkSeparator(separator);
+        String value = this.getString(name);
+        return value!=null && StringTokens.contains(value, separator, true, token.trim());
+    }
+
+    private static void checkSeparator(String separator) {
+        if(separator==null || separator.isEmpty()) {
+            throw new IllegalArgumentException("The separator must not be empty.");
+        }
+    }
 
     public Boolean getBoolean(String name) {
         return this.getBoolean(name,null);
     }
 
     public Boolean getBoolean(String name, Boolean defaultValue) {
-        String value = this.getPropertyValue(name);
-        if(value==null) {
-            return defaultValue;
-        } else {
-            return Boolean.valueOf(value);
-        }
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.BOOLEAN);
+        return (parsed.isValid() ? (Boolean)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getBoolean(String, Boolean)}, without boxing.
+     */
+    public boolean getBooleanValue(String name, boolean defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.BOOLEAN);
+        return (parsed.isValid() ? parsed.longValue!=0L : defaultValue);
     }
 
     public Integer getInteger(String name) {
@@ -74,16 +225,16 @@ public abstract class AbstractServiceConfiguration {
     }
 
     public Integer getInteger(String name, Integer defaultValue) {
-        if(this.contains(name)) {
-            try {
-                return this.resolve(Integer.valueOf(this.getPropertyValue(name)), defaultValue);
-            } catch(NumberFormatException nfEx) {
-                LOG.warn("Property value could not be converted to an integer. name={}",name);
-                return defaultValue;
-            }
-        } else {
-            return defaultValue;
-        }
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.INTEGER);
+        return (parsed.isValid() ? (Integer)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getInteger(String, Integer)}, without boxing.
+     */
+    public int getInt(String name, int defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.INTEGER);
+        return (parsed.isValid() ? (int)parsed.longValue : defaultValue);
     }
 
     public Double getDouble(String name) {
@@ -91,16 +242,16 @@ public abstract class AbstractServiceConfiguration {
     }
 
     public Double getDouble(String name, Double defaultValue) {
-        if(this.contains(name)) {
-            try {
-                return this.resolve(Double.valueOf(this.getPropertyValue(name)), defaultValue);
-            } catch(NumberFormatException nfEx) {
-                LOG.warn("Property value could not be converted to a double. name={}",name);
-                return defaultValue;
-            }
-        } else {
-            return defaultValue;
-        }
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.DOUBLE);
+        return (parsed.isValid() ? (Double)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getDouble(String, Double)}, without boxing.
+     */
+    public double getDoubleValue(String name, double defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.DOUBLE);
+        return (parsed.isValid() ? parsed.doubleValue : defaultValue);
     }
 
     public Long getLong(String name) {
@@ -108,16 +259,16 @@ public abstract class AbstractServiceConfiguration {
     }
 
     public Long getLong(String name, Long defaultValue) {
-        if(this.contains(name)) {
-            try {
-                return this.resolve(Long.valueOf(this.getPropertyValue(name)), defaultValue);
-            } catch(NumberFormatException nfEx) {
-                LOG.warn("Property value could not be converted to a long. name={}",name);
-                return defaultValue;
-            }
-        } else {
-            return defaultValue;
-        }
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.LONG);
+        return (parsed.isValid() ? (Long)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getLong(String, Long)}, without boxing.
+     */
+    public long getLongValue(String name, long defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.LONG);
+        return (parsed.isValid() ? parsed.longValue : defaultValue);
     }
 
     public Float getFloat(String name) {
@@ -125,15 +276,284 @@ public abstract class AbstractServiceConfiguration {
     }
 
     public Float getFloat(String name, Float defaultValue) {
-        if(this.contains(name)) {
-            try {
-                return this.resolve(Float.valueOf(this.getPropertyValue(name)), defaultValue);
-            } catch(NumberFormatException nfEx) {
-                LOG.warn("Property value could not be converted to a float. name={}",name);
-                return defaultValue;
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.FLOAT);
+        return (parsed.isValid() ? (Float)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getFloat(String, Float)}, without boxing.
+     */
+    public float getFloatValue(String name, float defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.FLOAT);
+        return (parsed.isValid() ? (float)parsed.doubleValue : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getDuration(String, Duration)} without a default.
+     */
+    public Duration getDuration(String name) {
+        return this.getDuration(name, null);
+    }
+
+    /**
+     * Reads a duration such as <code>30s</code> or <code>500ms</code>.  The units are <code>ns</code>, <code>us</code>,
+     * <code>ms</code>, <code>s</code>, <code>m</code>, <code>h</code> and <code>d</code>; a number without a unit is in
+     * milliseconds.
+     * @param name The name of the property to retrieve.
+     * @param defaultValue Returned if the property has no value, or one which is not a duration.
+     * @return The duration.
+     */
+    public Duration getDuration(String name, Duration defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.DURATION);
+        return (parsed.isValid() ? (Duration)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Reads a duration like {@link #getDuration(String, Duration)}, without boxing.
+     * @param unit The unit to return the duration in; it is truncated to whole units.
+     * @param defaultValue Returned, as is, if the property has no value, or one which is not a duration.
+     */
+    public long getDuration(String name, TimeUnit unit, long defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.DURATION);
+        return (parsed.isValid() ? unit.convert(parsed.longValue, TimeUnit.NANOSECONDS) : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getSize(String, Long)} without a default.
+     */
+    public Long getSize(String name) {
+        return this.getSize(name, null);
+    }
+
+    /**
+     * Reads a size in bytes such as <code>64MB</code>.  The units are <code>B</code>, <code>KB</code>, <code>MB</code>,
+     * <code>GB</code> and <code>TB</code>, in powers of 1024; a number without a unit is in bytes.
+     * @param name The name of the property to retrieve.
+     * @param defaultValue Returned if the property has no value, or one which is not a size.
+     * @return The number of bytes.
+     */
+    public Long getSize(String name, Long defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.SIZE);
+        return (parsed.isValid() ? (Long)parsed.boxed : defaultValue);
+    }
+
+    /**
+     * Same as {@link #getSize(String, Long)}, without boxing.
+     */
+    public long getSizeValue(String name, long defaultValue) {
+        ParsedValue parsed = this.getParsed(name, TypedValueCache.Type.SIZE);
+        return (parsed.isValid() ? parsed.longValue : defaultValue);
+    }
+
+    /**
+     * Binds an integer property, see {@link BoundProperty}.
+     * @param name The name of the property.
+     * @param defaultValue The value of the handle while the property has no valid value.
+     * @return A handle whose {@link IntProperty#get()} follows the property value through every refresh.
+     */
+    public IntProperty intProperty(String name, int defaultValue) {
+        return this.bind(new IntProperty(name, defaultValue));
+    }
+
+    /**
+     * Binds a long property, see {@link #intProperty(String, int)}.
+     */
+    public LongProperty longProperty(String name, long defaultValue) {
+        return this.bind(new LongProperty(name, defaultValue));
+    }
+
+    /**
+     * Binds a double property, see {@link #intProperty(String, int)}.
+     */
+    public DoubleProperty doubleProperty(String name, double defaultValue) {
+        return this.bind(new DoubleProperty(name, defaultValue));
+    }
+
+    /**
+     * Binds a float property, see {@link #intProperty(String, int)}.
+     */
+    public FloatProperty floatProperty(String name, float defaultValue) {
+        return this.bind(new FloatProperty(name, defaultValue));
+    }
+
+    /**
+     * Binds a boolean property, see {@link #intProperty(String, int)}.
+     */
+    public BooleanProperty booleanProperty(String name, boolean defaultValue) {
+        return this.bind(new BooleanProperty(name, defaultValue));
+    }
+
+    /**
+     * Binds a string property, see {@link #intProperty(String, int)}.
+     */
+    public StringProperty stringProperty(String name, String defaultValue) {
+        return this.bind(new StringProperty(name, defaultValue));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P extends BoundProperty> P bind(P property) {
+        BoundProperty.BindingKey key = property.getBindingKey();
+        WeakReference<BoundProperty> added = new WeakReference<BoundProperty>(property);
+        while(true) {
+            WeakReference<BoundProperty> reference = this.boundProperties.get(key);
+            BoundProperty existing = (reference==null ? null : reference.get());
+            if(existing!=null) {
+                return (P)existing;
+            }
+            if(reference==null ? this.boundProperties.putIfAbsent(key, added)==null : this.boundProperties.replace(key, reference, added)) {
+                property.update(this);
+                this.propertyBound();
+                return property;
             }
-        } else {
-            return defaultValue;
+        }
+    }
+
+    /**
+     * Called after a new property was bound to this object, for implementations whose values change without them knowing.
+     */
+    void propertyBound() {
+    }
+
+    /**
+     * Stops updating a bound property.  Binding the same name, type and default hands out the same handle, so this stops
+     * it for everyone who holds it.  Handles which nobody refers to any more need not be unbound; they are dropped.
+     * @return <code>true</code> if the property was bound to this object.
+     */
+    public boolean unbind(BoundProperty property) {
+        BoundProperty.BindingKey key = property.getBindingKey();
+        WeakReference<BoundProperty> reference = this.boundProperties.get(key);
+        return reference!=null && reference.get()==property && this.boundProperties.remove(key, reference);
+    }
+
+    /**
+     * Brings every bound property up to date.  Implementations call this after their property values changed.
+     */
+    void updateBoundProperties() {
+        for(Map.Entry<BoundProperty.BindingKey,WeakReference<BoundProperty>> entry : this.boundProperties.entrySet()) {
+            BoundProperty property = entry.getValue().get();
+            if(property==null) {
+                this.boundProperties.remove(entry.getKey(), entry.getValue());
+            } else {
+                property.update(this);
+            }
+        }
+    }
+
+    /**
+     * Moves the bound properties of an object which this one replaces over to this one, and brings them up to date.
+     */
+    void adoptBoundProperties(AbstractServiceConfiguration replaced) {
+        for(Map.Entry<BoundProperty.BindingKey,WeakReference<BoundProperty>> entry : replaced.boundProperties.entrySet()) {
+            BoundProperty property = entry.getValue().get();
+            replaced.boundProperties.remove(entry.getKey(), entry.getValue());
+            if(property!=null && this.boundProperties.putIfAbsent(entry.getKey(), entry.getValue())==null) {
+                property.update(this);
+            }
+        }
+    }
+
+    /**
+     * Identifies the data currently behind this configuration.  Converted values are cached for as long as this returns the
+     * same object, so implementations must hand out a new one whenever any property value changes.
+     * @return The current version, or <code>null</code> if values must not be cached.
+     */
+    Object getVersion() {
+        return null;
+    }
+
+    /**
+     * @return What goes before a name to make it the full key of the property, in the metrics; <code>null</code> if names
+     *         are full keys already.
+     */
+    String getKeyPrefix() {
+        return null;
+    }
+
+    private void recordRead(String name) {
+        ConfigurationMetrics current = this.metrics;
+        if(current!=null) {
+            current.recordRead(this.getKeyPrefix(), name);
+        }
+    }
+
+    private ParsedValue getParsed(String name, TypedValueCache.Type type) {
+        this.recordRead(name);
+        return this.loadParsed(name, type);
+    }
+
+    /**
+     * Converts a property value, like the typed getters, but without counting the read in the metrics.  For
+     * {@link BoundProperty} handles, which re-read their property on every update rather than when the application does.
+     */
+    ParsedValue loadParsed(String name, TypedValueCache.Type type) {
+        Object version = this.getVersion();
+        if(version==null) {
+            return this.parse(name, type);
+        }
+        TypedValueCache cache = this.currentCache(version);
+        ParsedValue parsed = cache.get(name, type);
+        if(parsed==null) {
+            parsed = this.parse(name, type);
+            cache.put(name, type, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return The cache of converted values for the version, replacing the cache of an older version.
+     */
+    TypedValueCache currentCache(Object version) {
+        TypedValueCache cache = this.typedValueCache;
+        if(cache==null || cache.getVersion()!=version) {
+            cache = new TypedValueCache(version);
+            this.typedValueCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * @return The cache of converted values as it is, possibly for an older version, or <code>null</code>.
+     */
+    TypedValueCache peekCache() {
+        return this.typedValueCache;
+    }
+
+    private ParsedValue parse(String name, TypedValueCache.Type type) {
+        String value = this.getPropertyValue(name);
+        if(value==null) {
+            return ParsedValue.MISSING;
+        }
+        ParsedValue parsed = convert(value, type);
+        if(!parsed.isValid()) {
+            LOG.warn("Property value could not be converted to {}. name={}",type.description,name);
+            ConfigurationMetrics current = this.metrics;
+            if(current!=null) {
+                current.recordParseFailure(this.getKeyPrefix(), name);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Converts a property value the way the typed getters do, without throwing.
+     * @return The converted value, or {@link ParsedValue#INVALID} if it could not be converted.
+     */
+    static ParsedValue convert(String value, TypedValueCache.Type type) {
+        switch(type) {
+            case INTEGER:
+                return ValueParser.parseInteger(value);
+            case LONG:
+                return ValueParser.parseLong(value);
+            case DOUBLE:
+                return ValueParser.parseDouble(value);
+            case FLOAT:
+                return ValueParser.parseFloat(value);
+            case DURATION:
+                return ValueParser.parseDuration(value);
+            case SIZE:
+                return ValueParser.parseSize(value);
+            default:
+                return ParsedValue.of(Boolean.valueOf(value));
         }
     }
 
@@ -0,0 +1,254 @@
+package com.servicecore.cfg;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking access to a {@link ServiceConfiguration}, for callers such as event loop threads which must never wait.
+ * <p>Cheap reads complete on the calling thread once the configuration has its snapshot.  Everything which may take
+ * longer (the first read, which has to read the property sources; building groups; refreshing) runs on a bounded
+ * executor, and the returned future completes there.  When the executor is saturated the future fails with a
+ * {@link RejectedExecutionException} instead of the caller being made to wait.</p>
+ * <p>{@link #watch(String, Consumer)} delivers the group under a path now and again after every refresh which changed
+ * it.</p>
+ */
+public class AsyncServiceConfiguration implements AutoCloseable {
+
+    private static Logger LOG = LoggerFactory.getLogger(AsyncServiceConfiguration.class);
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private final ServiceConfiguration configuration;
+    private final Executor executor;
+    /** The executor if this object created it, and so has to shut it down. */
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Runs the expensive operations on a pool of daemon threads owned by this object.
+     * @param configuration The configuration to read.
+     * @param threads The number of threads.
+     * @param queueCapacity The number of operations which may wait for a thread before further ones are rejected.
+     */
+    public AsyncServiceConfiguration(ServiceConfiguration configuration, int threads, int queueCapacity) {
+        this.configuration = configuration;
+        this.ownedExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "service-configuration-async-"+THREAD_IDS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor)this.ownedExecutor).allowCoreThreadTimeOut(true);
+        this.executor = this.ownedExecutor;
+    }
+
+    /**
+     * Runs the expensive operations on the given executor.  It should be bounded and must not be an event loop.
+     */
+    public AsyncServiceConfiguration(ServiceConfiguration configuration, Executor executor) {
+        this.configuration = configuration;
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    public ServiceConfiguration getConfiguration() {
+        return this.configuration;
+    }
+
+    public CompletableFuture<String> getPropertyValue(String name) {
+        return this.read(cfg -> cfg.getPropertyValue(name));
+    }
+
+    public CompletableFuture<Integer> getInteger(String name) {
+        return this.read(cfg -> cfg.getInteger(name));
+    }
+
+    public CompletableFuture<Long> getLong(String name) {
+        return this.read(cfg -> cfg.getLong(name));
+    }
+
+    public CompletableFuture<Double> getDouble(String name) {
+        return this.read(cfg -> cfg.getDouble(name));
+    }
+
+    public CompletableFuture<Boolean> getBoolean(String name) {
+        return this.read(cfg -> cfg.getBoolean(name));
+    }
+
+    /**
+     * Runs a cheap read, such as a typed getter, on the calling thread if the configuration has its snapshot, and on the
+     * executor if not.
+     * @param reader The read; it must not block.
+     * @return The result.
+     */
+    public <T> CompletableFuture<T> read(Function<ServiceConfiguration,T> reader) {
+        if(this.configuration.isSnapshotBuilt()) {
+            try {
+                return CompletableFuture.completedFuture(reader.apply(this.configuration));
+            } catch(RuntimeException rtEx) {
+                return failed(rtEx);
+            }
+        }
+        return this.submit(reader);
+    }
+
+    /**
+     * @see ServiceConfiguration#getStringGroup(String)
+     */
+    public CompletableFuture<ServiceConfigurationGroup> getStringGroup(String path) {
+        return this.submit(cfg -> cfg.getStringGroup(path));
+    }
+
+    /**
+     * @see ServiceConfiguration#getAll()
+     */
+    public CompletableFuture<ServiceConfigurationGroup> getAll() {
+        return this.submit(ServiceConfiguration::getAll);
+    }
+
+    /**
+     * @see ServiceConfiguration#refresh()
+     */
+    public CompletableFuture<ConfigurationChangeEvent> refresh() {
+        return this.submit(ServiceConfiguration::refresh);
+    }
+
+    /**
+     * Runs any operation on the executor.
+     */
+    public <T> CompletableFuture<T> submit(Function<ServiceConfiguration,T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(() -> operation.apply(this.configuration), this.executor);
+        } catch(RejectedExecutionException reEx) {
+            return failed(reEx);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable thrown) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(thrown);
+        return future;
+    }
+
+    /**
+     * Delivers the group under a path to the subscriber on the executor: once now, and again after every refresh which
+     * changed a property under the path.  Deliveries to one subscriber never overlap and come in order; if several
+     * refreshes happen while a group is being built or delivered, the subscriber only gets the latest group.
+     * @param path The path of the group, as for {@link ServiceConfiguration#getStringGroup(String)}.  Empty for every property.
+     * @param subscriber Receives the groups.  Exceptions it throws are logged.
+     * @return The subscription, to stop the deliveries with.
+     */
+    public Subscription watch(String path, Consumer<ServiceConfigurationGroup> subscriber) {
+        Watch watch = new Watch(path, subscriber);
+        if(path.isEmpty()) {
+            this.configuration.addChangeListener(watch);
+        } else {
+            this.configuration.addChangeListener(watch, path);
+        }
+        watch.schedule();
+        return watch;
+    }
+
+    /**
+     * Shuts the executor down if this object created it.
+     */
+    @Override
+    public void close() {
+        if(this.ownedExecutor!=null) {
+            this.ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * A running {@link #watch(String, Consumer)}.
+     */
+    public interface Subscription extends AutoCloseable {
+
+        /**
+         * Stops further deliveries.  A delivery already under way completes.
+         */
+        void cancel();
+
+        boolean isCancelled();
+
+        @Override
+        default void close() {
+            this.cancel();
+        }
+    }
+
+    private final class Watch implements ConfigurationChangeListener, Subscription, Runnable {
+        private final String path;
+        private final Consumer<ServiceConfigurationGroup> subscriber;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        /** Set while a delivery is scheduled or running. */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /** Set when the group changed since the running delivery took its snapshot. */
+        private volatile boolean dirty;
+
+        Watch(String path, Consumer<ServiceConfigurationGroup> subscriber) {
+            this.path = path;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onChange(ConfigurationChangeEvent event) {
+            this.schedule();
+        }
+
+        void schedule() {
+            this.dirty = true;
+            if(!this.cancelled.get() && this.scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch(RejectedExecutionException reEx) {
+                    this.scheduled.set(false);
+                    LOG.warn("Configuration watch could not be scheduled, it is retried at the next change. path={}",this.path,reEx);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(this.dirty && !this.cancelled.get()) {
+                    this.dirty = false;
+                    ServiceConfigurationGroup group = (this.path.isEmpty() ? configuration.getAll() : configuration.getStringGroup(this.path));
+                    try {
+                        this.subscriber.accept(group);
+                    } catch(RuntimeException rtEx) {
+                        LOG.error("Configuration watch subscriber failed. path={}",this.path,rtEx);
+                    }
+                }
+            } finally {
+                this.scheduled.set(false);
+            }
+            // A change may have come in after the loop checked, but before the flag was cleared.
+            if(this.dirty && !this.cancelled.get()) {
+                this.schedule();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if(this.cancelled.compareAndSet(false, true)) {
+                configuration.removeChangeListener(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled.get();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound boolean property.  See {@link BoundProperty}.
+ */
+public final class BooleanProperty extends BoundProperty {
+
+    private final boolean defaultValue;
+    private volatile boolean value;
+
+    BooleanProperty(String name, boolean defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public boolean get() {
+        return this.value;
+    }
+
+    public boolean getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        ParsedValue parsed = configuration.loadParsed(this.getName(), TypedValueCache.Type.BOOLEAN);
+        this.value = (parsed.isValid() ? parsed.longValue!=0L : this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
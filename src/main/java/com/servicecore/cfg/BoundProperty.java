@@ -0,0 +1,89 @@
+package com.servicecore.cfg;
+
+import java.util.Objects;
+
+/**
+ * A property name and type bound to a configuration once, whose value is kept up to date by the configuration itself.
+ * Reading a bound property is a single volatile read: no map lookup, no hashing of the name and no parsing.  Neither
+ * reading a handle nor the configuration updating it counts as a read in {@link ConfigurationMetrics}.
+ * <p>Obtain handles from the binding methods on {@link AbstractServiceConfiguration}, e.g.
+ * {@link AbstractServiceConfiguration#intProperty(String, int)}, and keep them in fields.  Binding the same name, type and
+ * default again returns the handle that already exists.</p>
+ * <p>A configuration holds its handles weakly: once nobody refers to a handle any more, it is dropped.
+ * {@link AbstractServiceConfiguration#unbind(BoundProperty)} stops updating one straight away.  Handles bound to the
+ * group of a {@link MaterializedGroup}, or to one of its break down children, move on to the replacement whenever a
+ * refresh replaces that group.</p>
+ */
+public abstract class BoundProperty {
+
+    private final String name;
+
+    BoundProperty(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The key this handle is registered under; handles with equal keys are interchangeable.
+     */
+    final BindingKey getBindingKey() {
+        return new BindingKey(this.getClass(), this.name, this.getBoxedDefault());
+    }
+
+    abstract Object getBoxedDefault();
+
+    /**
+     * Re-reads the value from the configuration.  Synchronized so that, when a refresh and a fresh binding race, the last
+     * update to run is also the one which read the newest data.
+     */
+    final synchronized void update(AbstractServiceConfiguration configuration) {
+        this.load(configuration);
+    }
+
+    abstract void load(AbstractServiceConfiguration configuration);
+
+    @Override
+    public String toString() {
+        return this.name+"="+this.getValueAsString();
+    }
+
+    abstract String getValueAsString();
+
+    /**
+     * The type, name and default of a handle.
+     */
+    static final class BindingKey {
+
+        private final Class<?> type;
+        private final String name;
+        private final Object defaultValue;
+
+        BindingKey(Class<?> type, String name, Object defaultValue) {
+            this.type = type;
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof BindingKey)) {
+                return false;
+            }
+            BindingKey key = (BindingKey)other;
+            return this.type==key.type && Objects.equals(this.name, key.name) && Objects.equals(this.defaultValue, key.defaultValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.type, this.name, this.defaultValue);
+        }
+
+        @Override
+        public String toString() {
+            return this.type.getSimpleName()+":"+this.name+"="+this.defaultValue;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.servicecore.cfg;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable property storage for very large groups, which keeps no key strings at all.
+ * <p>Every dot separated key segment is interned in a {@link SymbolTable} and a key is stored as the ids of its segments,
+ * packed into one int array.  Values are collapsed to one instance per distinct value within the map, and go away with it.  Entries are sorted segment by
+ * segment, so every sub-tree is a contiguous range and a {@link View} of it is just a range plus the depth of its prefix:
+ * break outs and break downs share the storage instead of copying keys, and the segment names handed back for break
+ * downs are the interned symbols themselves.  Key strings are only built when entries are iterated.</p>
+ */
+final class CompactPropertyMap {
+
+    private final SymbolTable symbolTable;
+    private final String[] symbols;
+    private final int[] segments;
+    private final int[] offsets;
+    private final String[] values;
+    private final int[] hashes;
+    private final int[] table;
+    private final int mask;
+
+    private CompactPropertyMap(SymbolTable symbolTable, List<int[]> keys, List<String> values, int[] hashes) {
+        this.symbolTable = symbolTable;
+        this.symbols = symbolTable.getSymbols();
+        int size = keys.size();
+        this.offsets = new int[size+1];
+        int total = 0;
+        for(int i=0; i<size; i++) {
+            this.offsets[i] = total;
+            total += keys.get(i).length;
+        }
+        this.offsets[size] = total;
+        this.segments = new int[total];
+        for(int i=0; i<size; i++) {
+            System.arraycopy(keys.get(i), 0, this.segments, this.offsets[i], keys.get(i).length);
+        }
+        this.values = values.toArray(new String[size]);
+        this.hashes = hashes;
+        int capacity = 2;
+        while(capacity < size*2) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        this.mask = capacity-1;
+        for(int i=0; i<size; i++) {
+            int slot = spread(hashes[i]) & this.mask;
+            while(this.table[slot]!=0) {
+                slot = (slot+1) & this.mask;
+            }
+            this.table[slot] = i+1;
+        }
+    }
+
+    /**
+     * @return A view over all of the properties, interned into the given table.
+     */
+    static View build(Map<String,String> properties, SymbolTable symbolTable) {
+        final List<int[]> keys = new ArrayList<int[]>(properties.size());
+        List<String> keyValues = new ArrayList<String>(properties.size());
+        List<Integer> keyHashes = new ArrayList<Integer>(properties.size());
+        Map<String,String> distinctValues = new HashMap<String,String>();
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            String[] parts = split(entry.getKey());
+            int[] ids = new int[parts.length];
+            for(int i=0; i<parts.length; i++) {
+                ids[i] = symbolTable.intern(parts[i]);
+            }
+            keys.add(ids);
+            keyValues.add(canonicalValue(entry.getValue(), distinctValues));
+            keyHashes.add(entry.getKey().hashCode());
+        }
+        final String[] symbols = symbolTable.getSymbols();
+        Integer[] order = new Integer[keys.size()];
+        for(int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                return compareSegments(keys.get(left), keys.get(right), symbols);
+            }
+        });
+        List<int[]> sortedKeys = new ArrayList<int[]>(order.length);
+        List<String> sortedValues = new ArrayList<String>(order.length);
+        int[] sortedHashes = new int[order.length];
+        for(int i=0; i<order.length; i++) {
+            sortedKeys.add(keys.get(order[i]));
+            sortedValues.add(keyValues.get(order[i]));
+            sortedHashes[i] = keyHashes.get(order[i]);
+        }
+        CompactPropertyMap map = new CompactPropertyMap(symbolTable, sortedKeys, sortedValues, sortedHashes);
+        return new View(map, 0, 0, 0, 0, order.length);
+    }
+
+    /**
+     * @return The first instance of the value seen while building the map.
+     */
+    private static String canonicalValue(String value, Map<String,String> distinctValues) {
+        if(value==null) {
+            return null;
+        }
+        String existing = distinctValues.putIfAbsent(value, value);
+        return (existing==null ? value : existing);
+    }
+
+    private static int compareSegments(int[] left, int[] right, String[] symbols) {
+        int length = Math.min(left.length, right.length);
+        for(int i=0; i<length; i++) {
+            if(left[i]!=right[i]) {
+                return symbols[left[i]].compareTo(symbols[right[i]]);
+            }
+        }
+        return left.length-right.length;
+    }
+
+    /**
+     * Splits on every dot, keeping empty segments, so joining the parts with dots gives back the key.
+     */
+    private static String[] split(String key) {
+        List<String> parts = new ArrayList<String>();
+        int start = 0;
+        for(int dot = key.indexOf('.'); dot>=0; dot = key.indexOf('.', start)) {
+            parts.add(key.substring(start, dot));
+            start = dot+1;
+        }
+        parts.add(key.substring(start));
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    private int segmentCount(int idx) {
+        return this.offsets[idx+1]-this.offsets[idx];
+    }
+
+    private int segment(int idx, int position) {
+        return this.segments[this.offsets[idx]+position];
+    }
+
+    /**
+     * @return Whether the segments of the entry from the given depth on, joined with dots, spell the name.
+     */
+    private boolean matches(int idx, int depth, String name) {
+        int pos = 0;
+        int end = this.offsets[idx+1];
+        for(int seg = this.offsets[idx]+depth; seg<end; seg++) {
+            if(seg>this.offsets[idx]+depth) {
+                if(pos>=name.length() || name.charAt(pos)!='.') {
+                    return false;
+                }
+                pos++;
+            }
+            String symbol = this.symbols[this.segments[seg]];
+            if(!name.regionMatches(pos, symbol, 0, symbol.length())) {
+                return false;
+            }
+            pos += symbol.length();
+        }
+        return pos==name.length();
+    }
+
+    /**
+     * Compares the entry's segments at <code>[depth, depth+prefix.length)</code> with the prefix ids.
+     * @return Negative, zero or positive as the entry sorts before, within or after the prefix's range.
+     */
+    private int comparePrefix(int idx, int depth, int[] prefix) {
+        int start = this.offsets[idx]+depth;
+        int end = this.offsets[idx+1];
+        for(int i=0; i<prefix.length; i++) {
+            if(start+i>=end) {
+                return -1;
+            }
+            int id = this.segments[start+i];
+            if(id!=prefix[i]) {
+                return this.symbols[id].compareTo(this.symbols[prefix[i]]);
+            }
+        }
+        return 0;
+    }
+
+    private String relativeKey(int idx, int depth) {
+        int start = this.offsets[idx]+depth;
+        int end = this.offsets[idx+1];
+        if(end-start==1) {
+            return this.symbols[this.segments[start]];
+        }
+        StringBuilder key = new StringBuilder();
+        for(int seg=start; seg<end; seg++) {
+            if(seg>start) {
+                key.append('.');
+            }
+            key.append(this.symbols[this.segments[seg]]);
+        }
+        return key.toString();
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The entries below a segment prefix, keyed by the segments after it.
+     */
+    static final class View extends AbstractMap<String,String> implements PrefixIndexedMap {
+
+        private final CompactPropertyMap map;
+        private final int depth;
+        private final int prefixHash;
+        private final int prefixLength;
+        private final int from;
+        private final int to;
+        private Set<Map.Entry<String,String>> entrySet;
+
+        /**
+         * @param depth The number of leading segments forming the prefix.
+         * @param prefixHash The {@link String#hashCode()} of the prefix, trailing dot included.
+         * @param prefixLength The length of the prefix, trailing dot included.
+         */
+        View(CompactPropertyMap map, int depth, int prefixHash, int prefixLength, int from, int to) {
+            this.map = map;
+            this.depth = depth;
+            this.prefixHash = prefixHash;
+            this.prefixLength = prefixLength;
+            this.from = from;
+            this.to = to;
+        }
+
+        private int indexOf(Object key) {
+            if(!(key instanceof String)) {
+                return -1;
+            }
+            String name = (String)key;
+            int hash = (this.prefixLength==0 ? name.hashCode() : this.prefixHash*PropertyIndex.pow31(name.length())+name.hashCode());
+            for(int slot = spread(hash) & this.map.mask; ; slot = (slot+1) & this.map.mask) {
+                int entry = this.map.table[slot];
+                if(entry==0) {
+                    return -1;
+                }
+                int idx = entry-1;
+                if(this.map.hashes[idx]==hash && idx>=this.from && idx<this.to && this.map.matches(idx, this.depth, name)) {
+                    return idx;
+                }
+            }
+        }
+
+        @Override
+        public String get(Object key) {
+            int idx = this.indexOf(key);
+            return (idx<0 ? null : this.map.values[idx]);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.indexOf(key)>=0;
+        }
+
+        @Override
+        public int size() {
+            return this.to-this.from;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.to==this.from;
+        }
+
+        @Override
+        public View prefixView(String prefix) {
+            if(prefix.isEmpty()) {
+                return this;
+            }
+            String[] parts = split(prefix.substring(0, prefix.length()-1));
+            int[] ids = new int[parts.length];
+            for(int i=0; i<parts.length; i++) {
+                ids[i] = this.map.symbolTable.lookup(parts[i]);
+                if(ids[i]<0 || ids[i]>=this.map.symbols.length || this.map.symbols[ids[i]]==null) {
+                    return new View(this.map, this.depth, 0, 0, this.from, this.from);
+                }
+            }
+            int lo = this.from;
+            int hi = this.to;
+            while(lo<hi) {
+                int mid = (lo+hi) >>> 1;
+                if(this.map.comparePrefix(mid, this.depth, ids)<0) {
+                    lo = mid+1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int start = lo;
+            hi = this.to;
+            while(lo<hi) {
+                int mid = (lo+hi) >>> 1;
+                if(this.map.comparePrefix(mid, this.depth, ids)<=0) {
+                    lo = mid+1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int end = lo;
+            int childDepth = this.depth+ids.length;
+            if(start<end && this.map.segmentCount(start)==childDepth) {
+                start++;
+            }
+            int hash = this.prefixHash*PropertyIndex.pow31(prefix.length())+prefix.hashCode();
+            return new View(this.map, childDepth, hash, this.prefixLength+prefix.length(), start, end);
+        }
+
+        @Override
+        public Map<String,PrefixIndexedMap> breakDown(String prefix) {
+            View parent = this.prefixView(prefix);
+            Map<String,PrefixIndexedMap> result = new LinkedHashMap<String, PrefixIndexedMap>();
+            int childDepth = parent.depth+1;
+            int idx = parent.from;
+            while(idx<parent.to) {
+                int id = this.map.segment(idx, parent.depth);
+                int[] child = new int[] {id};
+                int lo = idx+1;
+                int hi = parent.to;
+                while(lo<hi) {
+                    int mid = (lo+hi) >>> 1;
+                    if(this.map.comparePrefix(mid, parent.depth, child)<=0) {
+                        lo = mid+1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                int end = lo;
+                int start = (this.map.segmentCount(idx)==childDepth ? idx+1 : idx);
+                if(start<end) {
+                    String segment = this.map.symbols[id];
+                    int hash = (parent.prefixHash*PropertyIndex.pow31(segment.length())+segment.hashCode())*31+'.';
+                    result.put(segment, new View(this.map, childDepth, hash, parent.prefixLength+segment.length()+1, start, end));
+                }
+                idx = end;
+            }
+            return result;
+        }
+
+        @Override
+        public Collection<String> values() {
+            return new AbstractCollection<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new ViewIterator<String>() {
+                        @Override
+                        String element(int idx) {
+                            return map.values[idx];
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            if(this.entrySet==null) {
+                this.entrySet = new AbstractSet<Map.Entry<String,String>>() {
+                    @Override
+                    public Iterator<Map.Entry<String,String>> iterator() {
+                        return new ViewIterator<Map.Entry<String,String>>() {
+                            @Override
+                            Map.Entry<String,String> element(int idx) {
+                                return View.this.entry(idx);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public Spliterator<Map.Entry<String,String>> spliterator() {
+                        return IntStream.range(from, to).mapToObj(View.this::entry).spliterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return View.this.size();
+                    }
+                };
+            }
+            return this.entrySet;
+        }
+
+        private Map.Entry<String,String> entry(int idx) {
+            return new AbstractMap.SimpleImmutableEntry<String, String>(this.map.relativeKey(idx, this.depth), this.map.values[idx]);
+        }
+
+        private abstract class ViewIterator<E> implements Iterator<E> {
+            private int next = from;
+
+            abstract E element(int idx);
+
+            @Override
+            public boolean hasNext() {
+                return this.next<to;
+            }
+
+            @Override
+            public E next() {
+                if(this.next>=to) {
+                    throw new NoSuchElementException();
+                }
+                return this.element(this.next++);
+            }
+        }
+    }
+}
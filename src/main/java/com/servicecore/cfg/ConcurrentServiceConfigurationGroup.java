@@ -0,0 +1,78 @@
+package com.servicecore.cfg;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A {@link ServiceConfigurationGroup} which may be read and written by many threads at once without external locking.
+ * <p>The properties live in an immutable map.  Every write copies it, applies the change and publishes the copy with a
+ * compare-and-set, so readers never block and never see half of an {@link #setAll(Map)} or {@link #update(Consumer)}.
+ * Writes cost a copy of the group, so batch them with {@link #addAll(Map)} or {@link #update(Consumer)}.</p>
+ */
+public class ConcurrentServiceConfigurationGroup extends ServiceConfigurationGroup {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ServiceConfigurationGroup,Map> PROP_MAP =
+            AtomicReferenceFieldUpdater.newUpdater(ServiceConfigurationGroup.class, Map.class, "propMap");
+
+    public ConcurrentServiceConfigurationGroup(String path, Map<String,String> propMap) {
+        super(path, immutableCopy(propMap==null ? Collections.<String,String>emptyMap() : propMap), true);
+    }
+
+    public ConcurrentServiceConfigurationGroup(String path) {
+        this(path, null);
+    }
+
+    @Override
+    public void add(String name, String value) {
+        this.update(map -> map.put(name, value));
+    }
+
+    @Override
+    public void addAll(Map<String, String> hashMap) {
+        this.update(map -> map.putAll(hashMap));
+    }
+
+    @Override
+    public Map<String,String> setAll(Map<String, String> hashMap) {
+        @SuppressWarnings("unchecked")
+        Map<String,String> oldMap = PROP_MAP.getAndSet(this, immutableCopy(hashMap));
+        this.updateBoundProperties();
+        return oldMap;
+    }
+
+    /**
+     * Applies a batch of writes atomically: readers see either none or all of them.
+     * @param mutator Applies the writes to a private copy of the properties.  It runs again if another writer got in first, so
+     * it must not have side effects beyond the map it is given.
+     */
+    public void update(Consumer<Map<String,String>> mutator) {
+        Map<String,String> current;
+        Map<String,String> updated;
+        do {
+            current = this.propMap;
+            updated = new HashMap<String, String>(current);
+            mutator.accept(updated);
+            updated = Collections.unmodifiableMap(updated);
+        } while(!PROP_MAP.compareAndSet(this, current, updated));
+        this.updateBoundProperties();
+    }
+
+    /**
+     * The property map is replaced on every write, so it identifies the version of the data by itself.
+     */
+    @Override
+    Object getVersion() {
+        return this.propMap;
+    }
+
+    private static Map<String,String> immutableCopy(Map<String,String> propMap) {
+        if(propMap instanceof PrefixIndexedMap) {
+            return propMap;
+        }
+        return Collections.unmodifiableMap(new HashMap<String, String>(propMap));
+    }
+}
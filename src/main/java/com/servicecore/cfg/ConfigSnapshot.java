@@ -0,0 +1,123 @@
+package com.servicecore.cfg;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A consistent view of a {@link ServiceConfiguration} as of one snapshot, created by {@link ServiceConfiguration#pin()}.
+ * <p>Every read through the view, and through the groups and overlays it hands out, sees the same version of every
+ * property, however many refreshes happen meanwhile.  Nothing is copied: the view holds on to the immutable snapshot
+ * the configuration was serving when it was pinned, which stays reachable until the view is closed and dropped.  Use one
+ * per request instead of copying groups with {@link ServiceConfigurationGroup#toMap()}:</p>
+ * <pre>{@code
+ * try(ConfigSnapshot config = configuration.pin()) {
+ *     ServiceConfigurationGroup db = config.getStringGroup("db");
+ *     connect(db.getString("host"), db.getInteger("port"), config.getDuration("db.timeout"));
+ * }
+ * }</pre>
+ * <p>A view is not bound to the thread which pinned it, so it may be handed to other threads, virtual or not.  Converted
+ * values are shared with the configuration for as long as it serves the same snapshot.</p>
+ * <p>The pin covers the properties the snapshot holds, which is every property the environment enumerates.  Names it
+ * does not hold, such as the relaxed spellings of system environment variables, fall back to the live environment the
+ * way {@link ServiceConfiguration} reads do.  The snapshot remembers the answer to such a lookup, shared with every view
+ * of it, so later reads of that name agree with the first; but a name first read after the environment changed sees the
+ * change, and past ten thousand remembered names each read asks the environment again.  Read properties through the
+ * names the environment enumerates when the view must be strictly consistent.</p>
+ */
+public final class ConfigSnapshot extends AbstractServiceConfiguration implements AutoCloseable {
+
+    private final ServiceConfiguration configuration;
+    private final PropertySnapshot snapshot;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ConfigSnapshot(ServiceConfiguration configuration, PropertySnapshot snapshot) {
+        this.configuration = configuration;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return The version of the pinned snapshot.  Views pinned between the same two refreshes have the same version.
+     */
+    public long getSnapshotVersion() {
+        return this.snapshot.getVersion();
+    }
+
+    /**
+     * @return Whether the configuration has been refreshed since this view was pinned.
+     */
+    public boolean isStale() {
+        return this.configuration.getSnapshot()!=this.snapshot;
+    }
+
+    @Override
+    public String getPropertyValue(String name) {
+        return this.snapshot.get(name);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return this.snapshot.containsKey(name);
+    }
+
+    @Override
+    public boolean containsValue(String name) {
+        return this.snapshot.get(name)!=null;
+    }
+
+    /**
+     * Like {@link ServiceConfiguration#getStringGroup(String)}, from the pinned snapshot.
+     */
+    public ServiceConfigurationGroup getStringGroup(String path) {
+        long start = this.startTimer();
+        String pathPrefix = (path.endsWith(".") ? path : path+".");
+        ServiceConfigurationGroup group = this.inheritSettings(new ServiceConfigurationGroup(path,this.snapshot.asMap().prefixView(pathPrefix),true));
+        this.stopTimer(ConfigurationMetrics.Operation.GET_STRING_GROUP, start);
+        return group;
+    }
+
+    /**
+     * Like {@link ServiceConfiguration#getAll()}, from the pinned snapshot.
+     */
+    public ServiceConfigurationGroup getAll() {
+        long start = this.startTimer();
+        ServiceConfigurationGroup group = this.inheritSettings(new ServiceConfigurationGroup("",this.snapshot.asMap(),true));
+        this.stopTimer(ConfigurationMetrics.Operation.GET_ALL, start);
+        return group;
+    }
+
+    /**
+     * Like {@link ServiceConfiguration#overlay(String, Map)}, except that the overlay stays on the pinned snapshot rather
+     * than following refreshes.
+     */
+    public ServiceConfigurationGroup overlay(String path, Map<String,String> overrides) {
+        String pathPrefix = (path.isEmpty() || path.endsWith(".") ? path : path+".");
+        PrefixIndexedMap base = this.snapshot.asMap();
+        return this.inheritSettings(new ServiceConfigurationGroup(path,new OverlayMap(() -> base,pathPrefix,overrides),true));
+    }
+
+    /**
+     * Releases the pin.  Reads keep answering from the pinned snapshot, but the configuration no longer counts the view
+     * in {@link ServiceConfiguration#getPinCount()}.  Closing a view again does nothing.
+     */
+    @Override
+    public void close() {
+        if(this.closed.compareAndSet(false, true)) {
+            this.configuration.unpin();
+        }
+    }
+
+    @Override
+    Object getVersion() {
+        return this.snapshot;
+    }
+
+    /**
+     * Shares the converted values of the configuration while it serves the pinned snapshot, so that a view pinned per
+     * request does not convert every value again.
+     */
+    @Override
+    TypedValueCache currentCache(Object version) {
+        TypedValueCache shared = this.configuration.peekCache();
+        return (shared!=null && shared.getVersion()==version ? shared : super.currentCache(version));
+    }
+}
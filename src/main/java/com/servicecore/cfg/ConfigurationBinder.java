@@ -0,0 +1,342 @@
+package com.servicecore.cfg;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binds the properties of a group onto the fields of a settings object in one pass over the group's entries.
+ * <p>Given the group <code>oracle.connection.gooddb</code> with <code>max-pool-size=20</code>, binding it onto a class
+ * with a field <code>int maxPoolSize</code> sets that field to 20.  A field is matched by its own name, or by the kebab
+ * case (<code>max-pool-size</code>) or snake case (<code>max_pool_size</code>) form of it, in that order of preference.
+ * Fields are set through their public setter if there is one, and directly otherwise; static, final and transient fields
+ * are left alone, as are fields without a matching property.  Values are converted like the typed getters of
+ * {@link AbstractServiceConfiguration} convert them; a value which cannot be converted is logged and leaves its field
+ * unchanged.</p>
+ * <p>Supported field types are the primitives and their wrappers for int, long, double, float and boolean, strings,
+ * enums, {@link java.time.Duration durations} such as <code>30s</code>, and string arrays and lists, which are split on
+ * commas.  The fields and setters of each class are looked up once and cached, so binding many groups onto the same
+ * class costs little more than setting the fields.</p>
+ */
+public final class ConfigurationBinder {
+
+    private static Logger LOG = LoggerFactory.getLogger(ConfigurationBinder.class);
+
+    private static final ConcurrentHashMap<Class<?>,BindingPlan> PLANS = new ConcurrentHashMap<Class<?>, BindingPlan>();
+
+    private ConfigurationBinder() {
+    }
+
+    /**
+     * Creates an instance of the class through its no argument constructor and binds the group onto it.
+     * @param group The properties to bind.
+     * @param type The class of the settings object.
+     * @return The new, bound settings object.
+     */
+    public static <T> T bind(ServiceConfigurationGroup group, Class<T> type) {
+        BindingPlan plan = planFor(type);
+        T target = type.cast(plan.newInstance());
+        plan.apply(group, target);
+        return target;
+    }
+
+    /**
+     * Binds the group onto an existing settings object.  Fields without a matching property keep their value.
+     * @param group The properties to bind.
+     * @param target The settings object.
+     * @return The settings object.
+     */
+    public static <T> T bindTo(ServiceConfigurationGroup group, T target) {
+        planFor(target.getClass()).apply(group, target);
+        return target;
+    }
+
+    /**
+     * Binds every group of a break down, such as the result of {@link ServiceConfigurationGroup#breakDownToMap()}, onto a
+     * new instance of the class.
+     * @return The settings objects, keyed like the groups.
+     */
+    public static <T> Map<String,T> bindAll(Map<String,ServiceConfigurationGroup> groups, Class<T> type) {
+        BindingPlan plan = planFor(type);
+        Map<String,T> result = new HashMap<String, T>(Math.max(16, groups.size()*4/3+1));
+        for(Map.Entry<String,ServiceConfigurationGroup> entry : groups.entrySet()) {
+            T target = type.cast(plan.newInstance());
+            plan.apply(entry.getValue(), target);
+            result.put(entry.getKey(), target);
+        }
+        return result;
+    }
+
+    private static BindingPlan planFor(Class<?> type) {
+        BindingPlan plan = PLANS.get(type);
+        if(plan==null) {
+            plan = new BindingPlan(type);
+            BindingPlan existing = PLANS.putIfAbsent(type, plan);
+            plan = (existing==null ? plan : existing);
+        }
+        return plan;
+    }
+
+    /**
+     * @return The camel case name split into lower case words, e.g. <code>max-pool-size</code> for <code>maxPoolSize</code> and a dash.
+     */
+    static String toSeparated(String name, char separator) {
+        StringBuilder result = new StringBuilder(name.length()+4);
+        for(int i=0; i<name.length(); i++) {
+            char c = name.charAt(i);
+            if(Character.isUpperCase(c)) {
+                if(i>0) {
+                    result.append(separator);
+                }
+                result.append(Character.toLowerCase(c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * The cached bindings of one class.
+     */
+    private static final class BindingPlan {
+        private final Class<?> type;
+        private final Constructor<?> constructor;
+        private final FieldBinding[] bindings;
+        /** Every accepted property name, mapped to its binding and the preference of that name. */
+        private final Map<String,NameMatch> names = new HashMap<String, NameMatch>();
+
+        BindingPlan(Class<?> type) {
+            this.type = type;
+            this.constructor = findConstructor(type);
+            List<FieldBinding> found = new ArrayList<FieldBinding>();
+            for(Class<?> current = type; current!=null && current!=Object.class; current = current.getSuperclass()) {
+                for(Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if(Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    Conversion conversion = Conversion.of(field);
+                    if(conversion==null || this.names.containsKey(field.getName())) {
+                        continue;
+                    }
+                    FieldBinding binding = new FieldBinding(field, findSetter(type, field), conversion, found.size());
+                    found.add(binding);
+                    this.addName(field.getName(), binding, 0);
+                    this.addName(toSeparated(field.getName(), '-'), binding, 1);
+                    this.addName(toSeparated(field.getName(), '_'), binding, 2);
+                }
+            }
+            this.bindings = found.toArray(new FieldBinding[found.size()]);
+        }
+
+        private void addName(String name, FieldBinding binding, int rank) {
+            if(!this.names.containsKey(name)) {
+                this.names.put(name, new NameMatch(binding, rank));
+            }
+        }
+
+        Object newInstance() {
+            if(this.constructor==null) {
+                throw new IllegalArgumentException("Cannot bind configuration onto "+this.type.getName()+", it has no constructor without arguments.");
+            }
+            try {
+                return this.constructor.newInstance();
+            } catch(InvocationTargetException itEx) {
+                throw new IllegalStateException("Could not create "+this.type.getName()+" to bind configuration onto.", itEx.getCause());
+            } catch(ReflectiveOperationException roEx) {
+                throw new IllegalStateException("Could not create "+this.type.getName()+" to bind configuration onto.", roEx);
+            }
+        }
+
+        void apply(ServiceConfigurationGroup group, Object target) {
+            if(this.bindings.length==0) {
+                return;
+            }
+            // Lower is better; a field set through its own name must not be overwritten through a kebab or snake case name.
+            int[] boundRanks = new int[this.bindings.length];
+            Arrays.fill(boundRanks, Integer.MAX_VALUE);
+            for(Map.Entry<String,String> entry : group.asMap().entrySet()) {
+                NameMatch match = this.names.get(entry.getKey());
+                if(match==null || match.rank>=boundRanks[match.binding.index]) {
+                    continue;
+                }
+                if(match.binding.set(target, entry.getValue(), group, entry.getKey())) {
+                    boundRanks[match.binding.index] = match.rank;
+                }
+            }
+        }
+
+        private static Constructor<?> findConstructor(Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor;
+            } catch(NoSuchMethodException nsmEx) {
+                return null;
+            }
+        }
+
+        private static Method findSetter(Class<?> type, Field field) {
+            String name = "set"+Character.toUpperCase(field.getName().charAt(0))+field.getName().substring(1);
+            try {
+                Method setter = type.getMethod(name, field.getType());
+                if(Modifier.isStatic(setter.getModifiers())) {
+                    return null;
+                }
+                setter.setAccessible(true);
+                return setter;
+            } catch(NoSuchMethodException nsmEx) {
+                return null;
+            }
+        }
+    }
+
+    private static final class NameMatch {
+        final FieldBinding binding;
+        final int rank;
+
+        NameMatch(FieldBinding binding, int rank) {
+            this.binding = binding;
+            this.rank = rank;
+        }
+    }
+
+    private static final class FieldBinding {
+        final Field field;
+        final Method setter;
+        final Conversion conversion;
+        final int index;
+
+        FieldBinding(Field field, Method setter, Conversion conversion, int index) {
+            this.field = field;
+            this.setter = setter;
+            this.conversion = conversion;
+            this.index = index;
+            if(setter==null) {
+                field.setAccessible(true);
+            }
+        }
+
+        /**
+         * @return <code>true</code> if the field was set.
+         */
+        boolean set(Object target, String value, ServiceConfigurationGroup group, String name) {
+            Object converted = this.conversion.convert(value, this.field);
+            if(converted==INVALID || (converted==null && this.field.getType().isPrimitive())) {
+                LOG.warn("Property value could not be converted to {}. name={}.{}",this.conversion.description,group.getPath(),name);
+                return false;
+            }
+            try {
+                if(this.setter!=null) {
+                    this.setter.invoke(target, converted);
+                } else {
+                    this.field.set(target, converted);
+                }
+                return true;
+            } catch(InvocationTargetException itEx) {
+                throw new IllegalStateException("Could not bind property "+group.getPath()+"."+name+" onto "+this.field, itEx.getCause());
+            } catch(IllegalAccessException iaEx) {
+                throw new IllegalStateException("Could not bind property "+group.getPath()+"."+name+" onto "+this.field, iaEx);
+            }
+        }
+    }
+
+    /** Marks a value which could not be converted, as opposed to <code>null</code>. */
+    private static final Object INVALID = new Object();
+
+    private enum Conversion {
+        INTEGER("an integer", TypedValueCache.Type.INTEGER),
+        LONG("a long", TypedValueCache.Type.LONG),
+        DOUBLE("a double", TypedValueCache.Type.DOUBLE),
+        FLOAT("a float", TypedValueCache.Type.FLOAT),
+        BOOLEAN("a boolean", TypedValueCache.Type.BOOLEAN),
+        DURATION("a duration", TypedValueCache.Type.DURATION),
+        STRING("a string", null),
+        STRING_ARRAY("a string array", null),
+        STRING_LIST("a string list", null),
+        ENUM("an enum constant", null);
+
+        final String description;
+        final TypedValueCache.Type type;
+
+        Conversion(String description, TypedValueCache.Type type) {
+            this.description = description;
+            this.type = type;
+        }
+
+        static Conversion of(Field field) {
+            Class<?> type = field.getType();
+            if(type==int.class || type==Integer.class) {
+                return INTEGER;
+            } else if(type==long.class || type==Long.class) {
+                return LONG;
+            } else if(type==double.class || type==Double.class) {
+                return DOUBLE;
+            } else if(type==float.class || type==Float.class) {
+                return FLOAT;
+            } else if(type==boolean.class || type==Boolean.class) {
+                return BOOLEAN;
+            } else if(type==Duration.class) {
+                return DURATION;
+            } else if(type==String.class) {
+                return STRING;
+            } else if(type==String[].class) {
+                return STRING_ARRAY;
+            } else if((type==List.class || type==Collection.class) && isStringElement(field.getGenericType())) {
+                return STRING_LIST;
+            } else if(type.isEnum()) {
+                return ENUM;
+            }
+            return null;
+        }
+
+        private static boolean isStringElement(Type genericType) {
+            if(!(genericType instanceof ParameterizedType)) {
+                return true;
+            }
+            Type element = ((ParameterizedType)genericType).getActualTypeArguments()[0];
+            return element==String.class;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object convert(String value, Field field) {
+            if(value==null) {
+                return null;
+            }
+            if(this.type!=null) {
+                ParsedValue parsed = AbstractServiceConfiguration.convert(value, this.type);
+                return (parsed.isValid() ? parsed.boxed : INVALID);
+            }
+            switch(this) {
+                case STRING:
+                    return value;
+                case STRING_ARRAY:
+                    return StringTokens.split(value, ",");
+                case STRING_LIST:
+                    return Arrays.asList(StringTokens.split(value, ","));
+                default:
+                    try {
+                        return Enum.valueOf((Class<? extends Enum>)field.getType(), value.trim());
+                    } catch(IllegalArgumentException iaEx) {
+                        return INVALID;
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The properties changed by one {@link ServiceConfiguration} refresh.  Holds on to both the previous and the refreshed
+ * property values, so the old and new value of every changed property can be looked up without copying anything.
+ */
+public class ConfigurationChangeEvent {
+
+    private final PrefixIndexedMap previous;
+    private final PrefixIndexedMap current;
+    private final String[] changedKeys;
+
+    /**
+     * @param changedKeys The changed property names, in sorted order.
+     */
+    ConfigurationChangeEvent(PrefixIndexedMap previous, PrefixIndexedMap current, String[] changedKeys) {
+        this.previous = previous;
+        this.current = current;
+        this.changedKeys = changedKeys;
+    }
+
+    /**
+     * @return The names of the properties which were added, removed or changed, in sorted order.
+     */
+    public List<String> getChangedKeys() {
+        return Collections.unmodifiableList(Arrays.asList(this.changedKeys));
+    }
+
+    public boolean isEmpty() {
+        return this.changedKeys.length==0;
+    }
+
+    public int size() {
+        return this.changedKeys.length;
+    }
+
+    /**
+     * @param name A property name, or a path prefix.
+     * @return Whether the property, or any property under the path, changed.
+     */
+    public boolean hasChanged(String name) {
+        int idx = Arrays.binarySearch(this.changedKeys, name);
+        if(idx>=0) {
+            return true;
+        }
+        String prefix = (name.endsWith(".") ? name : name+".");
+        int next = this.firstAtOrAfter(prefix);
+        return next<this.changedKeys.length && this.changedKeys[next].startsWith(prefix);
+    }
+
+    public boolean isAdded(String name) {
+        return !this.previous.containsKey(name) && this.current.containsKey(name);
+    }
+
+    public boolean isRemoved(String name) {
+        return this.previous.containsKey(name) && !this.current.containsKey(name);
+    }
+
+    /**
+     * @return The raw value of the property before the refresh, <code>null</code> if it did not exist.
+     */
+    public String getPreviousValue(String name) {
+        return this.previous.get(name);
+    }
+
+    /**
+     * @return The raw value of the property after the refresh, <code>null</code> if it no longer exists.
+     */
+    public String getCurrentValue(String name) {
+        return this.current.get(name);
+    }
+
+    /**
+     * @param names Property names, or path prefixes matching every property below them.  Empty matches everything.
+     * @return The event restricted to the matching properties.
+     */
+    ConfigurationChangeEvent filter(String[] names) {
+        if(names.length==0) {
+            return this;
+        }
+        List<String> matched = new ArrayList<String>();
+        for(String name : names) {
+            if(Arrays.binarySearch(this.changedKeys, name)>=0) {
+                matched.add(name);
+            }
+            String prefix = (name.endsWith(".") ? name : name+".");
+            for(int idx = this.firstAtOrAfter(prefix); idx<this.changedKeys.length && this.changedKeys[idx].startsWith(prefix); idx++) {
+                matched.add(this.changedKeys[idx]);
+            }
+        }
+        String[] keys = matched.toArray(new String[matched.size()]);
+        Arrays.sort(keys);
+        return new ConfigurationChangeEvent(this.previous, this.current, distinct(keys));
+    }
+
+    private int firstAtOrAfter(String name) {
+        int idx = Arrays.binarySearch(this.changedKeys, name);
+        return (idx>=0 ? idx : -(idx+1));
+    }
+
+    private static String[] distinct(String[] sorted) {
+        int count = 0;
+        for(int i=0; i<sorted.length; i++) {
+            if(count==0 || !sorted[i].equals(sorted[count-1])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return (count==sorted.length ? sorted : Arrays.copyOf(sorted, count));
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationChangeEvent"+Arrays.toString(this.changedKeys);
+    }
+}
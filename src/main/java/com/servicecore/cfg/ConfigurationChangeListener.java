@@ -0,0 +1,14 @@
+package com.servicecore.cfg;
+
+/**
+ * Receives the changes a {@link ServiceConfiguration} refresh made to the properties a listener registered for.
+ * See {@link ServiceConfiguration#addChangeListener(ConfigurationChangeListener, String...)}.
+ */
+public interface ConfigurationChangeListener {
+
+    /**
+     * Called once per refresh which changed at least one of the properties the listener registered for, on the refreshing thread.
+     * @param event The changes, limited to the properties the listener registered for.
+     */
+    void onChange(ConfigurationChangeEvent event);
+}
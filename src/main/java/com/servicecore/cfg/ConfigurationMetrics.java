@@ -0,0 +1,316 @@
+package com.servicecore.cfg;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Optional instrumentation of configuration reads, switched on by handing an instance to
+ * {@link AbstractServiceConfiguration#setMetrics(ConfigurationMetrics)}.  Groups created from an instrumented
+ * configuration report to the same instance, under the full keys of the properties read through them.
+ * <p>Every read through <code>getString</code> or a typed getter is counted, and so is every value which fails to
+ * convert.  <code>getStringGroup</code>, <code>getAll</code>, break outs and break downs are timed into log2 latency
+ * histograms.  To keep the read path cheap, counters are striped {@link LongAdder}s, and only one in
+ * <code>sampleRate</code> calls is attributed to its key or timed; per-key counts are scaled back up, so they estimate
+ * the real number of reads.</p>
+ * <p>The values can be pushed to a {@link MetricsSink} with {@link #publish(MetricsSink)}, or watched through JMX after
+ * {@link #registerMBean(String)}.</p>
+ */
+public final class ConfigurationMetrics implements ConfigurationMetricsMBean {
+
+    /** The timed operations. */
+    public enum Operation {
+        GET_STRING_GROUP("getStringGroup"),
+        GET_ALL("getAll"),
+        BREAK_OUT("breakOut"),
+        BREAK_DOWN("breakDown");
+
+        final String metricName;
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    /** Upper bound on the names counted one by one; reads of further names only count towards the total. */
+    private static final int MAX_TRACKED_KEYS = 10000;
+
+    private static final int HOT_KEY_REPORT_SIZE = 20;
+
+    private final int sampleRate;
+    private final int sampleMask;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final ConcurrentHashMap<String,LongAdder> keyReads = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentHashMap<String,LongAdder> keyFailures = new ConcurrentHashMap<String, LongAdder>();
+    private final Map<Operation,LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+    /**
+     * Creates metrics which attribute every read to its key and time every operation.
+     */
+    public ConfigurationMetrics() {
+        this(1);
+    }
+
+    /**
+     * @param sampleRate One in how many reads is attributed to its key, and one in how many operations is timed.  Rounded up to a power of two.
+     */
+    public ConfigurationMetrics(int sampleRate) {
+        int rate = 1;
+        while(rate<sampleRate) {
+            rate <<= 1;
+        }
+        this.sampleRate = rate;
+        this.sampleMask = rate-1;
+        for(Operation operation : Operation.values()) {
+            this.latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    private boolean sampled() {
+        return this.sampleMask==0 || (ThreadLocalRandom.current().nextInt() & this.sampleMask)==0;
+    }
+
+    /**
+     * @param prefix The path of the group the name was read through, as in {@link ServiceConfigurationGroup#getPath()}
+     *               plus a dot, so that reads are counted by full key; <code>null</code> if the name is the full key.
+     */
+    void recordRead(String prefix, String name) {
+        this.reads.increment();
+        if(this.sampled()) {
+            LongAdder counter = counter(this.keyReads, fullKey(prefix, name));
+            if(counter!=null) {
+                counter.add(this.sampleRate);
+            }
+        }
+    }
+
+    void recordParseFailure(String prefix, String name) {
+        this.parseFailures.increment();
+        LongAdder counter = counter(this.keyFailures, fullKey(prefix, name));
+        if(counter!=null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * @return The start time to hand to {@link #stopTimer(Operation, long)}, or 0 if this call is not sampled.
+     */
+    long startTimer() {
+        return (this.sampled() ? System.nanoTime() : 0L);
+    }
+
+    void stopTimer(Operation operation, long start) {
+        if(start!=0L) {
+            this.latencies.get(operation).record(System.nanoTime()-start);
+        }
+    }
+
+    private static String fullKey(String prefix, String name) {
+        return (prefix==null || name==null ? name : prefix+name);
+    }
+
+    private static LongAdder counter(ConcurrentHashMap<String,LongAdder> counters, String name) {
+        LongAdder counter = counters.get(name);
+        if(counter==null && name!=null && counters.size()<MAX_TRACKED_KEYS) {
+            counter = new LongAdder();
+            LongAdder existing = counters.putIfAbsent(name, counter);
+            counter = (existing==null ? counter : existing);
+        }
+        return counter;
+    }
+
+    @Override
+    public long getReads() {
+        return this.reads.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return this.parseFailures.sum();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * @param limit The number of names to return.
+     * @return The most read property names with their estimated number of reads, most read first.
+     */
+    public Map<String,Long> getHotKeys(int limit) {
+        return top(this.keyReads, limit);
+    }
+
+    /**
+     * @param limit The number of names to return.
+     * @return The property names whose values failed to convert most often, with their number of failures.
+     */
+    public Map<String,Long> getFailingKeys(int limit) {
+        return top(this.keyFailures, limit);
+    }
+
+    @Override
+    public String[] getHotKeys() {
+        return format(this.getHotKeys(HOT_KEY_REPORT_SIZE));
+    }
+
+    @Override
+    public String[] getFailingKeys() {
+        return format(this.getFailingKeys(HOT_KEY_REPORT_SIZE));
+    }
+
+    /**
+     * @return The latency percentile of the operation in nanoseconds, rounded up to a power of two.  0 if it was never timed.
+     */
+    public long getLatencyPercentile(Operation operation, double percentile) {
+        return this.latencies.get(operation).percentile(percentile);
+    }
+
+    /**
+     * @return The number of timed calls of the operation.
+     */
+    public long getTimedCalls(Operation operation) {
+        return this.latencies.get(operation).count.sum();
+    }
+
+    @Override
+    public String[] getOperationLatencies() {
+        List<String> result = new ArrayList<String>();
+        for(Map.Entry<Operation,LatencyHistogram> entry : this.latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            result.add(entry.getKey().metricName+": timed="+histogram.count.sum()+", p50Nanos="+histogram.percentile(0.5)
+                    +", p99Nanos="+histogram.percentile(0.99)+", maxNanos="+histogram.max.get());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Hands every current value to the sink.
+     */
+    public void publish(MetricsSink sink) {
+        sink.report("cfg.reads", this.getReads());
+        sink.report("cfg.parseFailures", this.getParseFailures());
+        sink.report("cfg.trackedKeys", this.keyReads.size());
+        for(Map.Entry<Operation,LatencyHistogram> entry : this.latencies.entrySet()) {
+            String prefix = "cfg."+entry.getKey().metricName+".";
+            LatencyHistogram histogram = entry.getValue();
+            sink.report(prefix+"timed", histogram.count.sum());
+            sink.report(prefix+"p50Nanos", histogram.percentile(0.5));
+            sink.report(prefix+"p99Nanos", histogram.percentile(0.99));
+            sink.report(prefix+"maxNanos", histogram.max.get());
+        }
+    }
+
+    @Override
+    public void reset() {
+        this.reads.reset();
+        this.parseFailures.reset();
+        this.keyReads.clear();
+        this.keyFailures.clear();
+        for(LatencyHistogram histogram : this.latencies.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     * @param name Distinguishes this instance from others in the same JVM, e.g. the service name.
+     * @return The name the MBean was registered under.
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.servicecore.cfg:type=ConfigurationMetrics,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch(JMException jmEx) {
+            throw new IllegalStateException("Could not register configuration metrics. name="+name, jmEx);
+        }
+    }
+
+    private static Map<String,Long> top(ConcurrentHashMap<String,LongAdder> counters, int limit) {
+        List<Map.Entry<String,Long>> entries = new ArrayList<Map.Entry<String,Long>>();
+        for(Map.Entry<String,LongAdder> entry : counters.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String,Long>>() {
+            @Override
+            public int compare(Map.Entry<String,Long> left, Map.Entry<String,Long> right) {
+                return Long.compare(right.getValue(), left.getValue());
+            }
+        });
+        Map<String,Long> result = new LinkedHashMap<String, Long>();
+        for(Map.Entry<String,Long> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private static String[] format(Map<String,Long> counts) {
+        List<String> result = new ArrayList<String>();
+        for(Map.Entry<String,Long> entry : counts.entrySet()) {
+            result.add(entry.getKey()+"="+entry.getValue());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Latencies counted in power of two buckets: bucket <code>b</code> holds the durations below <code>2^b</code> nanoseconds.
+     */
+    private static final class LatencyHistogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        LatencyHistogram() {
+            for(int i=0; i<this.buckets.length; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(0L, nanos);
+            this.buckets[Math.min(63, 64-Long.numberOfLeadingZeros(value))].increment();
+            this.count.increment();
+            this.max.accumulate(value);
+        }
+
+        long percentile(double percentile) {
+            long total = this.count.sum();
+            if(total==0) {
+                return 0L;
+            }
+            long rank = (long)Math.ceil(total*percentile);
+            long seen = 0;
+            for(int i=0; i<this.buckets.length; i++) {
+                seen += this.buckets[i].sum();
+                if(seen>=rank) {
+                    return (i==0 ? 0L : 1L << Math.min(62, i));
+                }
+            }
+            return this.max.get();
+        }
+
+        void reset() {
+            for(LongAdder bucket : this.buckets) {
+                bucket.reset();
+            }
+            this.count.reset();
+            this.max.reset();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.servicecore.cfg;
+
+/**
+ * JMX view of {@link ConfigurationMetrics}.
+ */
+public interface ConfigurationMetricsMBean {
+
+    long getReads();
+
+    long getParseFailures();
+
+    int getSampleRate();
+
+    /**
+     * @return The most read property names as <code>name=estimated reads</code>, most read first.
+     */
+    String[] getHotKeys();
+
+    /**
+     * @return The property names whose values failed to convert as <code>name=failures</code>, most failures first.
+     */
+    String[] getFailingKeys();
+
+    /**
+     * @return One line per timed operation: the number of calls and the latency percentiles.
+     */
+    String[] getOperationLatencies();
+
+    void reset();
+}
@@ -0,0 +1,43 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound double property.  See {@link BoundProperty}.
+ */
+public final class DoubleProperty extends BoundProperty {
+
+    private final double defaultValue;
+    private volatile double value;
+
+    DoubleProperty(String name, double defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public double get() {
+        return this.value;
+    }
+
+    public double getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        ParsedValue parsed = configuration.loadParsed(this.getName(), TypedValueCache.Type.DOUBLE);
+        this.value = (parsed.isValid() ? parsed.doubleValue : this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
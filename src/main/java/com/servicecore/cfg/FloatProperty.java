@@ -0,0 +1,43 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound float property.  See {@link BoundProperty}.
+ */
+public final class FloatProperty extends BoundProperty {
+
+    private final float defaultValue;
+    private volatile float value;
+
+    FloatProperty(String name, float defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public float get() {
+        return this.value;
+    }
+
+    public float getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        ParsedValue parsed = configuration.loadParsed(this.getName(), TypedValueCache.Type.FLOAT);
+        this.value = (parsed.isValid() ? (float)parsed.doubleValue : this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
@@ -0,0 +1,43 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound int property.  See {@link BoundProperty}.
+ */
+public final class IntProperty extends BoundProperty {
+
+    private final int defaultValue;
+    private volatile int value;
+
+    IntProperty(String name, int defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public int get() {
+        return this.value;
+    }
+
+    public int getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        ParsedValue parsed = configuration.loadParsed(this.getName(), TypedValueCache.Type.INTEGER);
+        this.value = (parsed.isValid() ? (int)parsed.longValue : this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
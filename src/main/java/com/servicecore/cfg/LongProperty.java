@@ -0,0 +1,43 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound long property.  See {@link BoundProperty}.
+ */
+public final class LongProperty extends BoundProperty {
+
+    private final long defaultValue;
+    private volatile long value;
+
+    LongProperty(String name, long defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public long get() {
+        return this.value;
+    }
+
+    public long getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        ParsedValue parsed = configuration.loadParsed(this.getName(), TypedValueCache.Type.LONG);
+        this.value = (parsed.isValid() ? parsed.longValue : this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
@@ -0,0 +1,749 @@
+package com.servicecore.cfg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * Flattened properties in a binary file, read through a memory mapping instead of being loaded onto the heap.
+ * <p>The file holds a header, an index with one fixed size slot per property, sorted by the UTF-8 bytes of the keys, and
+ * the UTF-8 bytes of every key and value:</p>
+ * <pre>
+ * header: int magic, int format version, int property count
+ * index:  per property: int key offset, int key length, int value offset, int value length (-1 for null)
+ * data:   key and value bytes
+ * </pre>
+ * <p>Because keys sorted by their UTF-8 bytes keep every key prefix in one contiguous range, lookups and group views
+ * binary search the mapped index, and only the keys and values actually read are decoded into strings.  Files are
+ * written to a temporary file and then moved in place, so a reader never maps a half written file; an existing mapping
+ * keeps seeing the file it mapped.</p>
+ * <p>The same layout can also be kept in a direct buffer with {@link #offHeap(Map)}, for property sets too large to keep
+ * on the heap.  Those get an open addressing hash index over the full keys as well, so a lookup probes about one slot
+ * instead of binary searching.</p>
+ */
+final class MappedPropertyFile {
+
+    private static final int MAGIC = 0x53434647;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int SLOT_SIZE = 16;
+    private static final byte[] NO_BYTES = new byte[0];
+    /** Writes go out in chunks, since the JDK copies heap buffers into a temporary direct buffer as large as each write. */
+    private static final int WRITE_CHUNK_SIZE = 1 << 16;
+
+    private final ByteBuffer buffer;
+    /** Two ints per bucket, the key hash and the key's index plus one, or <code>null</code> to binary search instead. */
+    private final IntBuffer hashIndex;
+    private final int hashMask;
+
+    private MappedPropertyFile(ByteBuffer buffer, IntBuffer hashIndex) {
+        this.buffer = buffer;
+        this.hashIndex = hashIndex;
+        this.hashMask = (hashIndex==null ? 0 : hashIndex.capacity()/2-1);
+    }
+
+    /**
+     * Writes the properties to the file, replacing it if it exists.
+     */
+    static void write(Map<String,String> properties, Path file) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = layout(properties, false).buffer;
+        } catch(IllegalArgumentException iaEx) {
+            throw new IOException("Properties are too large for a snapshot file.", iaEx);
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while(buffer.hasRemaining()) {
+                    ByteBuffer chunk = buffer.duplicate();
+                    chunk.limit(Math.min(buffer.limit(), buffer.position()+WRITE_CHUNK_SIZE));
+                    buffer.position(buffer.position()+channel.write(chunk));
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies the properties into a direct buffer, outside the heap.  Keys and values are decoded whenever they are read.
+     * @return The view over every property.
+     * @throws IllegalArgumentException If the properties take more than 2GB.
+     */
+    static View offHeap(Map<String,String> properties) {
+        Layout layout = layout(properties, true);
+        int capacity = Integer.highestOneBit(Math.max(2, layout.keys.length*4/3+1)-1) << 1;
+        if(capacity>(Integer.MAX_VALUE >> 3)) {
+            throw new IllegalArgumentException("Too many properties for the hash index. properties="+layout.keys.length);
+        }
+        IntBuffer index = ByteBuffer.allocateDirect(capacity*8).asIntBuffer();
+        int mask = capacity-1;
+        for(int i=0; i<layout.keys.length; i++) {
+            int hash = hash(layout.keys[i], null, NO_BYTES);
+            int bucket = hash & mask;
+            while(index.get(2*bucket+1)!=0) {
+                bucket = (bucket+1) & mask;
+            }
+            index.put(2*bucket, hash);
+            index.put(2*bucket+1, i+1);
+        }
+        return new View(new MappedPropertyFile(layout.buffer, index), NO_BYTES, 0, layout.keys.length);
+    }
+
+    /**
+     * Lays the properties out in the file format, in a new buffer.
+     * @throws IllegalArgumentException If the properties take more than 2GB.
+     */
+    private static Layout layout(Map<String,String> properties, boolean direct) {
+        byte[][] keys = new byte[properties.size()][];
+        byte[][] values = new byte[keys.length][];
+        int idx = 0;
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            keys[idx] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            values[idx] = (entry.getValue()==null ? null : entry.getValue().getBytes(StandardCharsets.UTF_8));
+            idx++;
+        }
+        Integer[] order = new Integer[keys.length];
+        for(int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                return compareBytes(keys[left], keys[right]);
+            }
+        });
+        byte[][] sortedKeys = new byte[keys.length][];
+        byte[][] sortedValues = new byte[keys.length][];
+        long size = HEADER_SIZE+(long)SLOT_SIZE*keys.length;
+        for(int i=0; i<order.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedValues[i] = values[order[i]];
+            size += sortedKeys[i].length+(sortedValues[i]==null ? 0 : sortedValues[i].length);
+        }
+        if(size>Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Properties take more than 2GB. size="+size);
+        }
+
+        ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect((int)size) : ByteBuffer.allocate((int)size));
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(sortedKeys.length);
+        int offset = HEADER_SIZE+SLOT_SIZE*sortedKeys.length;
+        for(int i=0; i<sortedKeys.length; i++) {
+            buffer.putInt(offset);
+            buffer.putInt(sortedKeys[i].length);
+            offset += sortedKeys[i].length;
+            buffer.putInt(offset);
+            buffer.putInt(sortedValues[i]==null ? -1 : sortedValues[i].length);
+            offset += (sortedValues[i]==null ? 0 : sortedValues[i].length);
+        }
+        for(int i=0; i<sortedKeys.length; i++) {
+            buffer.put(sortedKeys[i]);
+            if(sortedValues[i]!=null) {
+                buffer.put(sortedValues[i]);
+            }
+        }
+        buffer.flip();
+        return new Layout(buffer, sortedKeys);
+    }
+
+    /**
+     * A laid out buffer, with the keys in the order of their slots.
+     */
+    private static final class Layout {
+        final ByteBuffer buffer;
+        final byte[][] keys;
+
+        Layout(ByteBuffer buffer, byte[][] keys) {
+            this.buffer = buffer;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(Map, Path)}.
+     * @return The view over every property in the file.
+     * @throws IOException If the file cannot be read or is not a snapshot file.
+     */
+    static View open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC) {
+            throw new IOException("Not a configuration snapshot file: "+file);
+        }
+        if(buffer.getInt(4)!=FORMAT_VERSION) {
+            throw new IOException("Unsupported configuration snapshot format "+buffer.getInt(4)+": "+file);
+        }
+        int count = buffer.getInt(8);
+        if(count<0 || HEADER_SIZE+(long)SLOT_SIZE*count>buffer.capacity()) {
+            throw new IOException("Truncated configuration snapshot file: "+file);
+        }
+        if(count>0) {
+            int last = HEADER_SIZE+SLOT_SIZE*(count-1);
+            if((long)buffer.getInt(last+8)+Math.max(0, buffer.getInt(last+12))>buffer.capacity()) {
+                throw new IOException("Truncated configuration snapshot file: "+file);
+            }
+        }
+        MappedPropertyFile properties = new MappedPropertyFile(buffer, null);
+        return new View(properties, NO_BYTES, 0, count);
+    }
+
+    private int slot(int idx) {
+        return HEADER_SIZE+SLOT_SIZE*idx;
+    }
+
+    private int keyLength(int idx) {
+        return this.buffer.getInt(this.slot(idx)+4);
+    }
+
+    private byte keyByte(int idx, int pos) {
+        return this.buffer.get(this.buffer.getInt(this.slot(idx))+pos);
+    }
+
+    /**
+     * @return The key, without its first <code>skip</code> bytes.
+     */
+    private String key(int idx, int skip) {
+        int slot = this.slot(idx);
+        return this.decode(this.buffer.getInt(slot)+skip, this.buffer.getInt(slot+4)-skip);
+    }
+
+    /**
+     * @return The {@link String#hashCode()} of the key without its first <code>skip</code> bytes.  ASCII keys, the usual
+     *         case, are hashed straight from their bytes; others are decoded.
+     */
+    private int keyStringHash(int idx, int skip) {
+        int slot = this.slot(idx);
+        int start = this.buffer.getInt(slot);
+        int end = start+this.buffer.getInt(slot+4);
+        int hash = 0;
+        for(int pos=start+skip; pos<end; pos++) {
+            byte b = this.buffer.get(pos);
+            if(b<0) {
+                return this.key(idx, skip).hashCode();
+            }
+            hash = 31*hash+b;
+        }
+        return hash;
+    }
+
+    private String value(int idx) {
+        int slot = this.slot(idx);
+        int length = this.buffer.getInt(slot+12);
+        return (length<0 ? null : this.decode(this.buffer.getInt(slot+8), length));
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = this.buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Looks the key made of the prefix and the name up in the hash index.  ASCII names, the usual case, are hashed and
+     * compared without encoding them.
+     * @return The index of the key, or -1.
+     */
+    private int hashLookup(byte[] prefix, String name) {
+        byte[] nameBytes = (isAscii(name) ? null : name.getBytes(StandardCharsets.UTF_8));
+        int hash = hash(prefix, name, nameBytes);
+        int nameLength = (nameBytes==null ? name.length() : nameBytes.length);
+        for(int bucket = hash & this.hashMask; ; bucket = (bucket+1) & this.hashMask) {
+            int entry = this.hashIndex.get(2*bucket+1);
+            if(entry==0) {
+                return -1;
+            }
+            if(this.hashIndex.get(2*bucket)==hash && this.keyEquals(entry-1, prefix, name, nameBytes, nameLength)) {
+                return entry-1;
+            }
+        }
+    }
+
+    private boolean keyEquals(int idx, byte[] prefix, String name, byte[] nameBytes, int nameLength) {
+        int slot = this.slot(idx);
+        if(this.buffer.getInt(slot+4)!=prefix.length+nameLength) {
+            return false;
+        }
+        int offset = this.buffer.getInt(slot);
+        for(int i=0; i<prefix.length; i++) {
+            if(this.buffer.get(offset+i)!=prefix[i]) {
+                return false;
+            }
+        }
+        offset += prefix.length;
+        for(int i=0; i<nameLength; i++) {
+            if(this.buffer.get(offset+i)!=nameByte(name, nameBytes, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of a key given as a prefix followed by a name; the name is either ASCII text, or its bytes.
+     */
+    private static int hash(byte[] prefix, String name, byte[] nameBytes) {
+        int hash = 0;
+        for(byte b : prefix) {
+            hash = 31*hash+b;
+        }
+        int nameLength = (nameBytes!=null ? nameBytes.length : (name==null ? 0 : name.length()));
+        for(int i=0; i<nameLength; i++) {
+            hash = 31*hash+nameByte(name, nameBytes, i);
+        }
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte nameByte(String name, byte[] nameBytes, int i) {
+        return (nameBytes==null ? (byte)name.charAt(i) : nameBytes[i]);
+    }
+
+    private static boolean isAscii(String name) {
+        for(int i=0; i<name.length(); i++) {
+            if(name.charAt(i)>=0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the key with the concatenation of <code>first</code> and <code>second</code>, as unsigned bytes.
+     */
+    private int compareKey(int idx, byte[] first, byte[] second) {
+        int slot = this.slot(idx);
+        int offset = this.buffer.getInt(slot);
+        int length = this.buffer.getInt(slot+4);
+        int otherLength = first.length+second.length;
+        int common = Math.min(length, otherLength);
+        for(int i=0; i<common; i++) {
+            int mine = this.buffer.get(offset+i) & 0xff;
+            int theirs = (i<first.length ? first[i] : second[i-first.length]) & 0xff;
+            if(mine!=theirs) {
+                return mine-theirs;
+            }
+        }
+        return length-otherLength;
+    }
+
+    /**
+     * Compares the keys of two entries, which may be in different files, as unsigned bytes after skipping the first bytes of each.
+     */
+    private static int compareKeys(MappedPropertyFile left, int leftIdx, int leftSkip, MappedPropertyFile right, int rightIdx, int rightSkip) {
+        int leftOffset = left.buffer.getInt(left.slot(leftIdx))+leftSkip;
+        int leftLength = left.keyLength(leftIdx)-leftSkip;
+        int rightOffset = right.buffer.getInt(right.slot(rightIdx))+rightSkip;
+        int rightLength = right.keyLength(rightIdx)-rightSkip;
+        int common = Math.min(leftLength, rightLength);
+        for(int i=0; i<common; i++) {
+            int cmp = (left.buffer.get(leftOffset+i) & 0xff)-(right.buffer.get(rightOffset+i) & 0xff);
+            if(cmp!=0) {
+                return cmp;
+            }
+        }
+        return leftLength-rightLength;
+    }
+
+    /**
+     * @return Whether the values of two entries, which may be in different files, have the same bytes, or are both <code>null</code>.
+     */
+    private static boolean valuesEqual(MappedPropertyFile left, int leftIdx, MappedPropertyFile right, int rightIdx) {
+        int leftSlot = left.slot(leftIdx);
+        int rightSlot = right.slot(rightIdx);
+        int length = left.buffer.getInt(leftSlot+12);
+        if(length!=right.buffer.getInt(rightSlot+12)) {
+            return false;
+        }
+        int leftOffset = left.buffer.getInt(leftSlot+8);
+        int rightOffset = right.buffer.getInt(rightSlot+8);
+        for(int i=0; i<length; i++) {
+            if(left.buffer.get(leftOffset+i)!=right.buffer.get(rightOffset+i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the value of the entry is the given one, compared as UTF-8 bytes so the value is not decoded.
+     */
+    private boolean valueEquals(int idx, String value) {
+        int slot = this.slot(idx);
+        int length = this.buffer.getInt(slot+12);
+        if(value==null || length<0) {
+            return value==null && length<0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length!=length) {
+            return false;
+        }
+        int offset = this.buffer.getInt(slot+8);
+        for(int i=0; i<length; i++) {
+            if(this.buffer.get(offset+i)!=bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int idx, byte[] prefix) {
+        if(this.keyLength(idx)<prefix.length) {
+            return false;
+        }
+        int offset = this.buffer.getInt(this.slot(idx));
+        for(int i=0; i<prefix.length; i++) {
+            if(this.buffer.get(offset+i)!=prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] prefix, byte[] name, int from, int to) {
+        int lo = from;
+        int hi = to-1;
+        while(lo<=hi) {
+            int mid = (lo+hi) >>> 1;
+            int cmp = this.compareKey(mid, prefix, name);
+            if(cmp<0) {
+                lo = mid+1;
+            } else if(cmp>0) {
+                hi = mid-1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int lowerBound(byte[] prefix, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while(lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(this.compareKey(mid, prefix, NO_BYTES)<0) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int upperBound(byte[] prefix, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while(lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(this.compareKey(mid, prefix, NO_BYTES)<0 || this.startsWith(mid, prefix)) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int compareBytes(byte[] left, byte[] right) {
+        int common = Math.min(left.length, right.length);
+        for(int i=0; i<common; i++) {
+            int cmp = (left[i] & 0xff)-(right[i] & 0xff);
+            if(cmp!=0) {
+                return cmp;
+            }
+        }
+        return left.length-right.length;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length+second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * A read-only map over the keys of the file starting with a prefix, keyed by the remainder of each key.
+     */
+    static final class View extends AbstractMap<String,String> implements PrefixIndexedMap {
+
+        private final MappedPropertyFile file;
+        private final byte[] prefix;
+        private final int from;
+        private final int to;
+        private Set<Map.Entry<String,String>> entrySet;
+        private Set<String> keySet;
+
+        View(MappedPropertyFile file, byte[] prefix, int from, int to) {
+            this.file = file;
+            this.prefix = prefix;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(Object key) {
+            if(!(key instanceof String)) {
+                return null;
+            }
+            int idx = this.indexOf((String)key);
+            return (idx<0 ? null : this.file.value(idx));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof String) && this.indexOf((String)key)>=0;
+        }
+
+        /**
+         * A key found with this view's prefix is always in this view's range, so the hash index serves every view.
+         */
+        private int indexOf(String key) {
+            if(this.file.hashIndex!=null) {
+                return this.file.hashLookup(this.prefix, key);
+            }
+            return this.file.indexOf(this.prefix, key.getBytes(StandardCharsets.UTF_8), this.from, this.to);
+        }
+
+        @Override
+        public int size() {
+            return this.to-this.from;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.to==this.from;
+        }
+
+        @Override
+        public View prefixView(String prefix) {
+            byte[] fullPrefix = concat(this.prefix, prefix.getBytes(StandardCharsets.UTF_8));
+            int lo = this.file.lowerBound(fullPrefix, this.from, this.to);
+            int hi = this.file.upperBound(fullPrefix, lo, this.to);
+            return new View(this.file, fullPrefix, lo, hi);
+        }
+
+        @Override
+        public Map<String,PrefixIndexedMap> breakDown(String prefix) {
+            Map<String,PrefixIndexedMap> result = new LinkedHashMap<String, PrefixIndexedMap>();
+            byte[] fullPrefix = concat(this.prefix, prefix.getBytes(StandardCharsets.UTF_8));
+            int offset = fullPrefix.length;
+            int lo = this.file.lowerBound(fullPrefix, this.from, this.to);
+            int hi = this.file.upperBound(fullPrefix, lo, this.to);
+            int idx = lo;
+            while(idx<hi) {
+                int length = this.file.keyLength(idx);
+                int breakIdx = offset;
+                while(breakIdx<length && this.file.keyByte(idx, breakIdx)!='.') {
+                    breakIdx++;
+                }
+                if(breakIdx>=length) {
+                    idx++;
+                    continue;
+                }
+                byte[] childPrefix = new byte[breakIdx+1];
+                for(int i=0; i<childPrefix.length; i++) {
+                    childPrefix[i] = this.file.keyByte(idx, i);
+                }
+                int end = this.file.upperBound(childPrefix, idx, hi);
+                result.put(new String(childPrefix, offset, breakIdx-offset, StandardCharsets.UTF_8), new View(this.file, childPrefix, idx, end));
+                idx = end;
+            }
+            return result;
+        }
+
+        /**
+         * Walks both views side by side comparing raw bytes, like {@link PropertyIndex#changedKeys(PropertyIndex, PropertyIndex)},
+         * so that only the keys which changed are decoded, and no value is.
+         * @return The keys which were added, removed or given a different value, in the order of their UTF-8 bytes.
+         */
+        static List<String> changedKeys(View previous, View current) {
+            List<String> changed = new ArrayList<String>();
+            int i = previous.from;
+            int j = current.from;
+            while(i<previous.to || j<current.to) {
+                int cmp = (i>=previous.to ? 1 : (j>=current.to ? -1 : compareKeys(previous.file, i, previous.prefix.length, current.file, j, current.prefix.length)));
+                if(cmp<0) {
+                    changed.add(previous.file.key(i++, previous.prefix.length));
+                } else if(cmp>0) {
+                    changed.add(current.file.key(j++, current.prefix.length));
+                } else {
+                    if(!valuesEqual(previous.file, i, current.file, j)) {
+                        changed.add(current.file.key(j, current.prefix.length));
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Compares the view with properties on the heap by looking each of them up in the view, so that only the keys
+         * which changed are decoded, and no value is.
+         * @return The keys which were added, removed or given a different value, in no particular order.
+         */
+        List<String> changedKeys(Map<String,String> other) {
+            List<String> changed = new ArrayList<String>();
+            BitSet matched = new BitSet(this.size());
+            for(Map.Entry<String,String> entry : other.entrySet()) {
+                int idx = this.indexOf(entry.getKey());
+                if(idx<0) {
+                    changed.add(entry.getKey());
+                } else {
+                    matched.set(idx-this.from);
+                    if(!this.file.valueEquals(idx, entry.getValue())) {
+                        changed.add(entry.getKey());
+                    }
+                }
+            }
+            for(int i=matched.nextClearBit(0); i<this.size(); i=matched.nextClearBit(i+1)) {
+                changed.add(this.file.key(this.from+i, this.prefix.length));
+            }
+            return changed;
+        }
+
+        /**
+         * @return A filter of the keys of this view, built from the key bytes without decoding any key or value.
+         */
+        MembershipFilter keyFilter() {
+            MembershipFilter filter = new MembershipFilter(this.size());
+            for(int idx=this.from; idx<this.to; idx++) {
+                filter.add(this.file.keyStringHash(idx, this.prefix.length));
+            }
+            return filter;
+        }
+
+        /**
+         * Decodes only the keys, unlike walking the entries.
+         */
+        @Override
+        public Set<String> keySet() {
+            if(this.keySet==null) {
+                this.keySet = new AbstractSet<String>() {
+                    @Override
+                    public Iterator<String> iterator() {
+                        return new ViewIterator<String>() {
+                            @Override
+                            String element(int idx) {
+                                return file.key(idx, prefix.length);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public boolean contains(Object key) {
+                        return View.this.containsKey(key);
+                    }
+
+                    @Override
+                    public int size() {
+                        return View.this.size();
+                    }
+                };
+            }
+            return this.keySet;
+        }
+
+        @Override
+        public Collection<String> values() {
+            return new AbstractCollection<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new ViewIterator<String>() {
+                        @Override
+                        String element(int idx) {
+                            return file.value(idx);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            if(this.entrySet==null) {
+                this.entrySet = new AbstractSet<Map.Entry<String,String>>() {
+                    @Override
+                    public Iterator<Map.Entry<String,String>> iterator() {
+                        return new ViewIterator<Map.Entry<String,String>>() {
+                            @Override
+                            Map.Entry<String,String> element(int idx) {
+                                return View.this.entry(idx);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return View.this.size();
+                    }
+
+                    @Override
+                    public Spliterator<Map.Entry<String,String>> spliterator() {
+                        return IntStream.range(from, to).mapToObj(View.this::entry).spliterator();
+                    }
+                };
+            }
+            return this.entrySet;
+        }
+
+        private Map.Entry<String,String> entry(int idx) {
+            return new AbstractMap.SimpleImmutableEntry<String, String>(this.file.key(idx, this.prefix.length), this.file.value(idx));
+        }
+
+        private abstract class ViewIterator<E> implements Iterator<E> {
+            private int next = from;
+
+            abstract E element(int idx);
+
+            @Override
+            public boolean hasNext() {
+                return this.next<to;
+            }
+
+            @Override
+            public E next() {
+                if(this.next>=to) {
+                    throw new NoSuchElementException();
+                }
+                return this.element(this.next++);
+            }
+        }
+    }
+}
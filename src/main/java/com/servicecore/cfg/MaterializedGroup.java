@@ -0,0 +1,119 @@
+package com.servicecore.cfg;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A group, and its break down, which a {@link ServiceConfiguration} keeps up to date through every refresh.  Created by
+ * {@link ServiceConfiguration#materialize(String)}.
+ * <p>A refresh only rebuilds what its changes touch.  If nothing under the path changed, the group and its break down
+ * children stay the same objects; they are merely pointed at the new snapshot, which costs a binary search each, so
+ * they do not hold on to the old one.  Otherwise the group is replaced, and of its break down only the children with a
+ * changed key are.  Like the groups of {@link ServiceConfiguration#getStringGroup(String)}, the groups handed out never
+ * change their values, but properties bound to a group which is replaced move on to its replacement, so they keep
+ * following the refreshes.</p>
+ */
+public final class MaterializedGroup implements AutoCloseable {
+
+    private final ServiceConfiguration configuration;
+    private final String path;
+    /** The key prefix of the group in the snapshot, empty for every property. */
+    private final String prefix;
+    private volatile ServiceConfigurationGroup group;
+    private volatile Map<String,ServiceConfigurationGroup> breakDown;
+
+    MaterializedGroup(ServiceConfiguration configuration, String path, ServiceConfigurationGroup group) {
+        this.configuration = configuration;
+        this.path = path;
+        this.prefix = (path.isEmpty() || path.endsWith(".") ? path : path+".");
+        this.group = group;
+        this.breakDown = Collections.unmodifiableMap(group.breakDownToMap());
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return The group as of the latest refresh.
+     */
+    public ServiceConfigurationGroup getGroup() {
+        return this.group;
+    }
+
+    /**
+     * @return The break down of the group as of the latest refresh, see {@link ServiceConfigurationGroup#breakDownToMap()}.
+     */
+    public Map<String,ServiceConfigurationGroup> getBreakDown() {
+        return this.breakDown;
+    }
+
+    /**
+     * Stops the updates.  The group and break down stay as they are.
+     */
+    @Override
+    public void close() {
+        this.configuration.removeMaterializedGroup(this);
+    }
+
+    /**
+     * Brings the group up to date with a new snapshot.  Called by the configuration, holding its snapshot lock.
+     * @param snapshot Every property of the new snapshot.
+     * @param changedKeys The keys which changed since the previous snapshot, sorted.
+     */
+    void update(PrefixIndexedMap snapshot, List<String> changedKeys) {
+        PrefixIndexedMap view = (this.prefix.isEmpty() ? snapshot : snapshot.prefixView(this.prefix));
+        int first = firstAtOrAfter(changedKeys, this.prefix);
+        int last = first;
+        while(last<changedKeys.size() && changedKeys.get(last).startsWith(this.prefix)) {
+            last++;
+        }
+        ServiceConfigurationGroup current = this.group;
+        if(first==last) {
+            current.rebase(view);
+            for(Map.Entry<String,ServiceConfigurationGroup> child : this.breakDown.entrySet()) {
+                child.getValue().rebase(view.prefixView(child.getKey()+"."));
+            }
+            return;
+        }
+
+        Set<String> changedChildren = new HashSet<String>();
+        for(String key : changedKeys.subList(first, last)) {
+            int breakIdx = key.indexOf('.', this.prefix.length());
+            if(breakIdx>=0) {
+                changedChildren.add(key.substring(this.prefix.length(), breakIdx));
+            }
+        }
+        ServiceConfigurationGroup replacement = this.configuration.inheritSettings(new ServiceConfigurationGroup(current.getPath(), view, true));
+        replacement.adoptBoundProperties(current);
+        Map<String,ServiceConfigurationGroup> children = new HashMap<String, ServiceConfigurationGroup>(this.breakDown);
+        for(Map.Entry<String,ServiceConfigurationGroup> child : children.entrySet()) {
+            if(!changedChildren.contains(child.getKey())) {
+                child.getValue().rebase(view.prefixView(child.getKey()+"."));
+            }
+        }
+        for(String segment : changedChildren) {
+            PrefixIndexedMap childView = view.prefixView(segment+".");
+            ServiceConfigurationGroup previousChild = children.remove(segment);
+            ServiceConfigurationGroup child = this.configuration.inheritSettings(new ServiceConfigurationGroup(current.getPath()+"."+segment, childView, true));
+            if(previousChild!=null) {
+                // Also for a child which is gone, so that its bound properties fall back to their defaults.
+                child.adoptBoundProperties(previousChild);
+            }
+            if(!childView.isEmpty()) {
+                children.put(segment, child);
+            }
+        }
+        this.group = replacement;
+        this.breakDown = Collections.unmodifiableMap(children);
+    }
+
+    private static int firstAtOrAfter(List<String> sorted, String key) {
+        int idx = Collections.binarySearch(sorted, key);
+        return (idx<0 ? -idx-1 : idx);
+    }
+}
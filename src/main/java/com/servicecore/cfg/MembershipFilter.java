@@ -0,0 +1,71 @@
+package com.servicecore.cfg;
+
+/**
+ * A Bloom filter over a fixed set of names: it answers that a name is certainly not in the set, or that it may be.
+ * <p>Misses are the common case of some read patterns, such as probing for optional overrides, so a snapshot asks this
+ * first and only looks up the names which may be there.  The filter is blocked: all bits of a name lie in one 64-bit
+ * word, so a lookup reads a single word and never more than one cache line.  With {@link #BITS_PER_NAME} bits per name,
+ * fewer than one absent name in 300 gets through.</p>
+ * <p>Names are hashed by their {@link String#hashCode()}, which strings cache, so a repeated lookup does not hash the name
+ * again.  A filter is filled while it is built and only read once it has been published.</p>
+ */
+final class MembershipFilter {
+
+    static final int BITS_PER_NAME = 16;
+
+    private final long[] words;
+    private final int mask;
+
+    /**
+     * @param expectedNames The number of names which will be added.
+     */
+    MembershipFilter(int expectedNames) {
+        long neededWords = ((long)Math.max(0, expectedNames)*BITS_PER_NAME+63) >>> 6;
+        int wordCount = 1;
+        while(wordCount<neededWords && wordCount<(1 << 30)) {
+            wordCount <<= 1;
+        }
+        this.words = new long[wordCount];
+        this.mask = wordCount-1;
+    }
+
+    /**
+     * @return A filter of the names.
+     */
+    static MembershipFilter of(Iterable<String> names, int count) {
+        MembershipFilter filter = new MembershipFilter(count);
+        for(String name : names) {
+            filter.add(name.hashCode());
+        }
+        return filter;
+    }
+
+    void add(int hash) {
+        long mixed = mix(hash);
+        this.words[(int)mixed & this.mask] |= bits(mixed);
+    }
+
+    boolean mightContain(String name) {
+        return this.mightContain(name.hashCode());
+    }
+
+    boolean mightContain(int hash) {
+        long mixed = mix(hash);
+        long bits = bits(mixed);
+        return (this.words[(int)mixed & this.mask] & bits)==bits;
+    }
+
+    /**
+     * Spreads the hash over 64 bits: the low bits pick the word, the high bits the four bits in it.
+     */
+    private static long mix(int hash) {
+        long mixed = hash*0x9e3779b97f4a7c15L;
+        mixed ^= (mixed >>> 29);
+        mixed *= 0xbf58476d1ce4e5b9L;
+        return mixed ^ (mixed >>> 32);
+    }
+
+    private static long bits(long mixed) {
+        return (1L << (mixed >>> 40)) | (1L << (mixed >>> 46)) | (1L << (mixed >>> 52)) | (1L << (mixed >>> 58));
+    }
+}
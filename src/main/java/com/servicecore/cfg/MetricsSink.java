@@ -0,0 +1,13 @@
+package com.servicecore.cfg;
+
+/**
+ * Receives the values of {@link ConfigurationMetrics} when they are published, e.g. to hand them on to a metrics library.
+ */
+public interface MetricsSink {
+
+    /**
+     * @param name The dot separated metric name, e.g. <code>cfg.reads</code> or <code>cfg.getAll.p99Nanos</code>.
+     * @param value The current value.
+     */
+    void report(String name, long value);
+}
@@ -0,0 +1,227 @@
+package com.servicecore.cfg;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A read-only property map made of a few overriding entries on top of a shared base map, which is never copied.
+ * <p>This is how tenants share one configuration: each tenant's overlay only stores that tenant's overrides, so
+ * creating one costs as much as indexing its overrides.  The base is fetched from a supplier, so an overlay over a
+ * {@link ServiceConfiguration} follows its refreshes.  An override with a <code>null</code> value hides the base entry.
+ * Views of sub-trees are overlays themselves.</p>
+ */
+final class OverlayMap extends AbstractMap<String,String> implements PrefixIndexedMap {
+
+    private final Supplier<PrefixIndexedMap> root;
+    /** The key prefix of this view in the root map, empty or ending with a dot. */
+    private final String prefix;
+    private final PrefixIndexedMap overrides;
+    /** Whether any override, anywhere in the overlay, has a <code>null</code> value. */
+    private final boolean hasRemovals;
+    private volatile BaseState state;
+    private Set<Map.Entry<String,String>> entrySet;
+
+    /**
+     * @param root Supplies the current base map.
+     * @param prefix The key prefix of the overlaid properties in the base map, empty or ending with a dot.
+     * @param overrides The overriding entries, keyed without the prefix.  <code>null</code> values remove the base entry.
+     */
+    OverlayMap(Supplier<PrefixIndexedMap> root, String prefix, Map<String,String> overrides) {
+        this(root, prefix, PropertyIndex.build(overrides), overrides.containsValue(null));
+    }
+
+    private OverlayMap(Supplier<PrefixIndexedMap> root, String prefix, PrefixIndexedMap overrides, boolean hasRemovals) {
+        this.root = root;
+        this.prefix = prefix;
+        this.overrides = overrides;
+        this.hasRemovals = hasRemovals;
+    }
+
+    /**
+     * @return An overlay on the same base with these overrides on top of the current ones.
+     */
+    OverlayMap with(Map<String,String> moreOverrides) {
+        Map<String,String> combined = new HashMap<String, String>(this.overrides);
+        combined.putAll(moreOverrides);
+        return new OverlayMap(this.root, this.prefix, PropertyIndex.build(combined), this.hasRemovals || moreOverrides.containsValue(null));
+    }
+
+    /**
+     * Has the bound properties of a group over this overlay updated whenever the base is refreshed, if it ever is.
+     */
+    void follow(AbstractServiceConfiguration group) {
+        if(this.root instanceof ServiceConfiguration.CurrentProperties) {
+            ((ServiceConfiguration.CurrentProperties)this.root).follow(group);
+        }
+    }
+
+    /**
+     * @return An object which stays the same for as long as neither the base nor the overrides change.
+     */
+    Object getVersion() {
+        return this.base();
+    }
+
+    /**
+     * @return The state for the current base, which only has to be recomputed after the base was replaced.
+     */
+    private BaseState base() {
+        PrefixIndexedMap rootMap = this.root.get();
+        BaseState current = this.state;
+        if(current==null || current.rootMap!=rootMap) {
+            current = new BaseState(rootMap, (this.prefix.isEmpty() ? rootMap : rootMap.prefixView(this.prefix)));
+            this.state = current;
+        }
+        return current;
+    }
+
+    @Override
+    public String get(Object key) {
+        String value = this.overrides.get(key);
+        if(value!=null) {
+            return value;
+        }
+        if(this.hasRemovals && this.overrides.containsKey(key)) {
+            return null;
+        }
+        return this.base().view.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if(this.overrides.containsKey(key)) {
+            return this.overrides.get(key)!=null;
+        }
+        return this.base().view.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        BaseState current = this.base();
+        int size = current.size;
+        if(size<0) {
+            size = current.view.size();
+            for(Map.Entry<String,String> entry : this.overrides.entrySet()) {
+                boolean inBase = current.view.containsKey(entry.getKey());
+                if(entry.getValue()==null) {
+                    size -= (inBase ? 1 : 0);
+                } else {
+                    size += (inBase ? 0 : 1);
+                }
+            }
+            current.size = size;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size()==0;
+    }
+
+    @Override
+    public OverlayMap prefixView(String prefix) {
+        return new OverlayMap(this.root, this.prefix+prefix, this.overrides.prefixView(prefix), this.hasRemovals);
+    }
+
+    @Override
+    public Map<String,PrefixIndexedMap> breakDown(String prefix) {
+        Set<String> segments = new LinkedHashSet<String>(this.base().view.breakDown(prefix).keySet());
+        segments.addAll(this.overrides.breakDown(prefix).keySet());
+        Map<String,PrefixIndexedMap> result = new LinkedHashMap<String, PrefixIndexedMap>();
+        for(String segment : segments) {
+            OverlayMap child = this.prefixView(prefix+segment+".");
+            if(!this.hasRemovals || !child.isEmpty()) {
+                result.put(segment, child);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Map.Entry<String,String>> entrySet() {
+        if(this.entrySet==null) {
+            this.entrySet = new AbstractSet<Map.Entry<String,String>>() {
+                @Override
+                public Iterator<Map.Entry<String,String>> iterator() {
+                    return new OverlayIterator(base().view);
+                }
+
+                @Override
+                public int size() {
+                    return OverlayMap.this.size();
+                }
+            };
+        }
+        return this.entrySet;
+    }
+
+    /**
+     * Walks the base entries which are not overridden, then the overrides which have a value.
+     */
+    private final class OverlayIterator implements Iterator<Map.Entry<String,String>> {
+        private final Iterator<Map.Entry<String,String>> baseEntries;
+        private final Iterator<Map.Entry<String,String>> overrideEntries = overrides.entrySet().iterator();
+        private Map.Entry<String,String> next;
+
+        OverlayIterator(PrefixIndexedMap base) {
+            this.baseEntries = base.entrySet().iterator();
+            this.advance();
+        }
+
+        private void advance() {
+            this.next = null;
+            while(this.baseEntries.hasNext()) {
+                Map.Entry<String,String> entry = this.baseEntries.next();
+                if(!overrides.containsKey(entry.getKey())) {
+                    this.next = entry;
+                    return;
+                }
+            }
+            while(this.overrideEntries.hasNext()) {
+                Map.Entry<String,String> entry = this.overrideEntries.next();
+                if(entry.getValue()!=null) {
+                    this.next = entry;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next!=null;
+        }
+
+        @Override
+        public Map.Entry<String,String> next() {
+            if(this.next==null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String,String> result = this.next;
+            this.advance();
+            return result;
+        }
+    }
+
+    /**
+     * The base view for one version of the root map, with the overlay size once it is known.
+     */
+    private static final class BaseState {
+        final PrefixIndexedMap rootMap;
+        final PrefixIndexedMap view;
+        volatile int size = -1;
+
+        BaseState(PrefixIndexedMap rootMap, PrefixIndexedMap view) {
+            this.rootMap = rootMap;
+            this.view = view;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.servicecore.cfg;
+
+import java.time.Duration;
+
+/**
+ * The outcome of converting one property value to a typed value, kept by the {@link TypedValueCache} so a value is only
+ * parsed, boxed and (if broken) complained about once per configuration version.
+ */
+final class ParsedValue {
+
+    /** The property has no value. */
+    static final ParsedValue MISSING = new ParsedValue(null, 0L, 0d);
+
+    /** The property has a value which could not be converted. */
+    static final ParsedValue INVALID = new ParsedValue(null, 0L, 0d);
+
+    final Object boxed;
+    final long longValue;
+    final double doubleValue;
+
+    private ParsedValue(Object boxed, long longValue, double doubleValue) {
+        this.boxed = boxed;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+    }
+
+    static ParsedValue of(Integer value) {
+        return new ParsedValue(value, value, value);
+    }
+
+    static ParsedValue of(Long value) {
+        return new ParsedValue(value, value, value);
+    }
+
+    static ParsedValue of(Double value) {
+        return new ParsedValue(value, value.longValue(), value);
+    }
+
+    static ParsedValue of(Float value) {
+        return new ParsedValue(value, value.longValue(), value);
+    }
+
+    static ParsedValue of(Duration value) {
+        return new ParsedValue(value, value.toNanos(), value.toNanos());
+    }
+
+    static ParsedValue of(Boolean value) {
+        return new ParsedValue(value, (value ? 1L : 0L), (value ? 1d : 0d));
+    }
+
+    boolean isValid() {
+        return this.boxed!=null;
+    }
+}
@@ -0,0 +1,294 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the <code>${name}</code> placeholders in flattened properties once per snapshot, so reads, groups and break
+ * outs all see resolved values.  The syntax is Spring's: <code>${name:default}</code> falls back to the default if the
+ * name has no value, and placeholders may be nested in names and defaults, e.g. <code>${db.${env}.host}</code>.
+ * <p>Every resolution records the names each value looked up, which makes a dependency graph between the properties.
+ * Resolving the next snapshot only re-resolves the values whose raw value changed, and those which depend on a changed
+ * value or on a name outside the properties; every other value is taken over from the previous snapshot as is, and
+ * properties nothing refers to are never compared.</p>
+ * <p>Unlike the Spring environment, a placeholder which cannot be resolved, or which is part of a cycle, does not fail:
+ * it is left in the value as is, and logged.</p>
+ */
+final class PlaceholderResolver {
+
+    private static Logger LOG = LoggerFactory.getLogger(PlaceholderResolver.class);
+
+    private static final String PREFIX = "${";
+    private static final String SUFFIX = "}";
+    private static final String SIMPLE_PREFIX = "{";
+    private static final String SEPARATOR = ":";
+
+    private PlaceholderResolver() {
+    }
+
+    /**
+     * Replaces the raw values in the map with resolved ones.
+     * @param properties The flattened, raw properties; the values holding placeholders are replaced.
+     * @param fallback Looks up names which are not in the properties, or <code>null</code> if the properties hold every name.
+     * @param previous The graph of the previous snapshot, or <code>null</code> to resolve every value.
+     * @param previousValues The resolved properties of the previous snapshot, if <code>previous</code> is given.
+     * @return The graph of this snapshot, for resolving the next one.
+     */
+    static Resolution resolve(Map<String,String> properties, Function<String,String> fallback, Resolution previous, Map<String,String> previousValues) {
+        Pass pass = new Pass(properties, fallback, previous, previousValues);
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            pass.resolve(entry.getKey(), entry.getValue());
+        }
+        properties.putAll(pass.resolved);
+        if(previous!=null && LOG.isDebugEnabled()) {
+            LOG.debug("Property placeholders have been resolved. placeholders={}, reResolved={}",pass.rawValues.size(),pass.reResolved);
+        }
+        return new Resolution(pass.rawValues, pass.references, pass.external);
+    }
+
+    /**
+     * The dependency graph of one snapshot.
+     */
+    static final class Resolution {
+        /** The raw values of the properties which hold placeholders. */
+        final Map<String,String> rawValues;
+        /** The names each of those properties looked up. */
+        final Map<String,String[]> references;
+        /** The properties which looked up a name outside the properties, so they are re-resolved every time. */
+        final Set<String> external;
+        /** The properties which looked each name up. */
+        final Map<String,List<String>> dependents = new HashMap<String, List<String>>();
+
+        Resolution(Map<String,String> rawValues, Map<String,String[]> references, Set<String> external) {
+            this.rawValues = rawValues;
+            this.references = references;
+            this.external = external;
+            for(Map.Entry<String,String[]> entry : references.entrySet()) {
+                for(String reference : entry.getValue()) {
+                    List<String> names = this.dependents.get(reference);
+                    if(names==null) {
+                        names = new ArrayList<String>(2);
+                        this.dependents.put(reference, names);
+                    }
+                    names.add(entry.getKey());
+                }
+            }
+        }
+
+        /**
+         * @return The names of the properties which depend on the given ones, directly or not.
+         */
+        Set<String> collectDependents(Iterable<String> names) {
+            Set<String> result = new HashSet<String>();
+            Deque<String> queue = new ArrayDeque<String>();
+            for(String name : names) {
+                queue.add(name);
+            }
+            while(!queue.isEmpty()) {
+                List<String> direct = this.dependents.get(queue.poll());
+                if(direct!=null) {
+                    for(String dependent : direct) {
+                        if(result.add(dependent)) {
+                            queue.add(dependent);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * One resolution of a snapshot.
+     */
+    private static final class Pass {
+        /** Returned for a property whose resolution is under way, i.e. which is part of a cycle. */
+        private static final String CYCLE = new String("cycle");
+
+        private final Map<String,String> properties;
+        private final Function<String,String> fallback;
+        private final Resolution previous;
+        private final Map<String,String> previousValues;
+        /** The properties to re-resolve besides those whose raw value changed, or <code>null</code> to resolve every one. */
+        private final Set<String> dirty;
+
+        private final Map<String,String> resolved = new HashMap<String, String>();
+        private final Map<String,String> rawValues = new HashMap<String, String>();
+        private final Map<String,String[]> references = new HashMap<String, String[]>();
+        private final Set<String> external = new HashSet<String>();
+        private final Set<String> inProgress = new LinkedHashSet<String>();
+        private int reResolved;
+
+        Pass(Map<String,String> properties, Function<String,String> fallback, Resolution previous, Map<String,String> previousValues) {
+            this.properties = properties;
+            this.fallback = fallback;
+            this.previous = (previousValues==null ? null : previous);
+            this.previousValues = previousValues;
+            this.dirty = (this.previous==null ? null : this.dirtyNames());
+        }
+
+        /**
+         * Only the names which were looked up can change a resolved value, besides the raw values holding placeholders
+         * themselves, which {@link #resolve(String, String)} compares.  So the other properties are not compared at all.
+         * @return The properties which depend on a name whose value changed, was added or removed, or on a name outside
+         *         the properties.
+         */
+        private Set<String> dirtyNames() {
+            List<String> changed = new ArrayList<String>(this.previous.external);
+            for(String name : this.previous.dependents.keySet()) {
+                String previousRaw = this.previous.rawValues.get(name);
+                if(previousRaw==null) {
+                    previousRaw = this.previousValues.get(name);
+                }
+                boolean existed = (previousRaw!=null || this.previousValues.containsKey(name));
+                if(existed!=this.properties.containsKey(name) || !Objects.equals(previousRaw, this.properties.get(name))) {
+                    changed.add(name);
+                }
+            }
+            Set<String> result = this.previous.collectDependents(changed);
+            result.addAll(this.previous.external);
+            return result;
+        }
+
+        /**
+         * @return The resolved value of the property, <code>null</code> if it has none or is not in the properties, or {@link #CYCLE}.
+         */
+        String resolve(String name, String value) {
+            if(value==null || value.indexOf(PREFIX)<0) {
+                return value;
+            }
+            String result = this.resolved.get(name);
+            if(result!=null) {
+                return result;
+            }
+            if(this.dirty!=null && !this.dirty.contains(name) && value.equals(this.previous.rawValues.get(name))) {
+                result = this.previousValues.get(name);
+                this.record(name, value, result, this.previous.references.get(name), this.previous.external.contains(name));
+                return result;
+            }
+            if(!this.inProgress.add(name)) {
+                LOG.warn("Property values reference each other in a cycle, the placeholders are left unresolved. names={}",this.inProgress);
+                return CYCLE;
+            }
+            Lookups lookups = new Lookups();
+            try {
+                result = this.parse(value, name, lookups);
+            } finally {
+                this.inProgress.remove(name);
+            }
+            this.reResolved++;
+            this.record(name, value, result, lookups.names.toArray(new String[lookups.names.size()]), lookups.external);
+            return result;
+        }
+
+        private void record(String name, String rawValue, String value, String[] names, boolean external) {
+            this.resolved.put(name, value);
+            this.rawValues.put(name, rawValue);
+            this.references.put(name, names);
+            if(external) {
+                this.external.add(name);
+            }
+        }
+
+        /**
+         * Replaces the placeholders in the text, like Spring's <code>PropertyPlaceholderHelper</code>.
+         */
+        private String parse(String text, String name, Lookups lookups) {
+            int start = text.indexOf(PREFIX);
+            if(start<0) {
+                return text;
+            }
+            StringBuilder result = new StringBuilder(text);
+            while(start>=0) {
+                int end = findPlaceholderEnd(result, start);
+                if(end<0) {
+                    break;
+                }
+                String placeholder = this.parse(result.substring(start+PREFIX.length(), end), name, lookups);
+                String replacement = this.lookup(placeholder, lookups);
+                if(replacement==null) {
+                    int separatorIdx = placeholder.indexOf(SEPARATOR);
+                    if(separatorIdx>=0) {
+                        replacement = this.lookup(placeholder.substring(0, separatorIdx), lookups);
+                        if(replacement==null) {
+                            replacement = this.parse(placeholder.substring(separatorIdx+SEPARATOR.length()), name, lookups);
+                        }
+                    }
+                }
+                if(replacement!=null) {
+                    result.replace(start, end+SUFFIX.length(), replacement);
+                    start = result.indexOf(PREFIX, start+replacement.length());
+                } else {
+                    LOG.warn("Property value has a placeholder which could not be resolved, it is left as is. name={}, placeholder={}",name,placeholder);
+                    start = result.indexOf(PREFIX, end+SUFFIX.length());
+                }
+            }
+            return result.toString();
+        }
+
+        private String lookup(String reference, Lookups lookups) {
+            lookups.names.add(reference);
+            if(this.properties.containsKey(reference)) {
+                String value = this.resolve(reference, this.properties.get(reference));
+                return (value==CYCLE ? null : value);
+            }
+            if(this.fallback==null) {
+                return null;
+            }
+            lookups.external = true;
+            return this.fallback.apply(reference);
+        }
+
+        private static int findPlaceholderEnd(CharSequence text, int start) {
+            int idx = start+PREFIX.length();
+            int nested = 0;
+            while(idx<text.length()) {
+                if(matches(text, idx, SUFFIX)) {
+                    if(nested==0) {
+                        return idx;
+                    }
+                    nested--;
+                    idx += SUFFIX.length();
+                } else if(matches(text, idx, SIMPLE_PREFIX)) {
+                    nested++;
+                    idx += SIMPLE_PREFIX.length();
+                } else {
+                    idx++;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean matches(CharSequence text, int idx, String part) {
+            if(idx+part.length()>text.length()) {
+                return false;
+            }
+            for(int i=0; i<part.length(); i++) {
+                if(text.charAt(idx+i)!=part.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The names one property looked up while it was resolved.
+     */
+    private static final class Lookups {
+        final List<String> names = new ArrayList<String>(2);
+        boolean external;
+    }
+}
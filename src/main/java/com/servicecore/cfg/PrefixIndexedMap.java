@@ -0,0 +1,25 @@
+package com.servicecore.cfg;
+
+import java.util.Map;
+
+/**
+ * A read-only property map that can hand out views of its dot separated sub-trees without scanning or copying every entry.
+ * {@link ServiceConfigurationGroup} uses these operations for its break outs and break downs whenever its properties are
+ * backed by one of these maps.
+ */
+interface PrefixIndexedMap extends Map<String,String> {
+
+    /**
+     * @param prefix The key prefix, ending with a dot.
+     * @return A view of the entries whose key starts with the prefix, keyed by the remainder of the key.  Empty if nothing matches.
+     */
+    PrefixIndexedMap prefixView(String prefix);
+
+    /**
+     * Splits the entries under the prefix on the next key segment, like {@link ServiceConfigurationGroup#breakDownToMap(String)}.
+     * Keys which have no further segment after the prefix are left out.
+     * @param prefix The key prefix, either empty or ending with a dot.
+     * @return The views for each next key segment, keyed by that segment.
+     */
+    Map<String,PrefixIndexedMap> breakDown(String prefix);
+}
@@ -0,0 +1,335 @@
+package com.servicecore.cfg;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable property storage sorted by key, so that every key sharing a prefix sits in one contiguous range.
+ * <p>Groups are {@link RangeView}s onto a range of the shared arrays: building one costs two binary searches, and a break
+ * down costs one binary search per child instead of a pass over every key.  Exact lookups go through an open addressing
+ * hash table whose hashes are combined from the view prefix and the relative name, so a group lookup never has to
+ * concatenate the two.</p>
+ */
+final class PropertyIndex {
+
+    private final String[] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int[] table;
+    private final int mask;
+
+    private PropertyIndex(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.hashes = new int[keys.length];
+        int capacity = 2;
+        while(capacity < keys.length*2) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        this.mask = capacity-1;
+        for(int i=0; i<keys.length; i++) {
+            int hash = keys[i].hashCode();
+            this.hashes[i] = hash;
+            int slot = spread(hash) & this.mask;
+            while(this.table[slot]!=0) {
+                slot = (slot+1) & this.mask;
+            }
+            this.table[slot] = i+1;
+        }
+    }
+
+    /**
+     * @param properties The properties to index.  Keys must not be <code>null</code>.
+     * @return The view over the whole index.
+     */
+    static RangeView build(Map<String,String> properties) {
+        String[] keys = properties.keySet().toArray(new String[properties.size()]);
+        Arrays.sort(keys);
+        String[] values = new String[keys.length];
+        for(int i=0; i<keys.length; i++) {
+            values[i] = properties.get(keys[i]);
+        }
+        PropertyIndex index = new PropertyIndex(keys, values);
+        return new RangeView(index, "", 0, keys.length);
+    }
+
+    int size() {
+        return this.keys.length;
+    }
+
+    String key(int idx) {
+        return this.keys[idx];
+    }
+
+    String value(int idx) {
+        return this.values[idx];
+    }
+
+    /**
+     * @return The position of the key <code>prefix+name</code>, or -1 if it is not in the index.
+     */
+    int indexOf(String prefix, int prefixHash, String name) {
+        int length = prefix.length()+name.length();
+        int hash = (prefix.isEmpty() ? name.hashCode() : prefixHash*pow31(name.length())+name.hashCode());
+        for(int slot = spread(hash) & this.mask; ; slot = (slot+1) & this.mask) {
+            int entry = this.table[slot];
+            if(entry==0) {
+                return -1;
+            }
+            int idx = entry-1;
+            if(this.hashes[idx]==hash) {
+                String key = this.keys[idx];
+                if(key.length()==length && key.startsWith(prefix) && key.regionMatches(prefix.length(), name, 0, name.length())) {
+                    return idx;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The first position in <code>[from,to)</code> whose key is not less than the prefix.
+     */
+    int lowerBound(String prefix, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while(lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(this.keys[mid].compareTo(prefix)<0) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param from A position at or before the first key starting with the prefix.
+     * @return The first position in <code>[from,to)</code>, past the keys starting with the prefix, whose key does not.
+     */
+    int upperBound(String prefix, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while(lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(this.keys[mid].compareTo(prefix)<0 || this.keys[mid].startsWith(prefix)) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Walks both indexes side by side, so the cost is linear in the number of keys and nothing is looked up by name.
+     * @return The keys which were added, removed or given a different value, in sorted order.
+     */
+    static List<String> changedKeys(PropertyIndex previous, PropertyIndex current) {
+        List<String> changed = new ArrayList<String>();
+        int i = 0;
+        int j = 0;
+        while(i<previous.keys.length || j<current.keys.length) {
+            int cmp = (i>=previous.keys.length ? 1 : (j>=current.keys.length ? -1 : previous.keys[i].compareTo(current.keys[j])));
+            if(cmp<0) {
+                changed.add(previous.keys[i++]);
+            } else if(cmp>0) {
+                changed.add(current.keys[j++]);
+            } else {
+                if(!Objects.equals(previous.values[i], current.values[j])) {
+                    changed.add(current.keys[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return <code>31^exponent</code> in int arithmetic, the factor {@link String#hashCode()} shifts a prefix hash by.
+     */
+    static int pow31(int exponent) {
+        int result = 1;
+        int base = 31;
+        while(exponent>0) {
+            if((exponent & 1)!=0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A read-only map over the keys of the index starting with a prefix, keyed by the remainder of each key.
+     */
+    static final class RangeView extends AbstractMap<String,String> implements PrefixIndexedMap {
+
+        private final PropertyIndex index;
+        private final String prefix;
+        private final int prefixHash;
+        private final int from;
+        private final int to;
+        private Set<Map.Entry<String,String>> entrySet;
+
+        RangeView(PropertyIndex index, String prefix, int from, int to) {
+            this.index = index;
+            this.prefix = prefix;
+            this.prefixHash = prefix.hashCode();
+            this.from = from;
+            this.to = to;
+        }
+
+        PropertyIndex getIndex() {
+            return this.index;
+        }
+
+        @Override
+        public String get(Object key) {
+            if(!(key instanceof String)) {
+                return null;
+            }
+            int idx = this.index.indexOf(this.prefix, this.prefixHash, (String)key);
+            return (idx<0 ? null : this.index.value(idx));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof String) && this.index.indexOf(this.prefix, this.prefixHash, (String)key)>=0;
+        }
+
+        @Override
+        public int size() {
+            return this.to-this.from;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.to==this.from;
+        }
+
+        @Override
+        public RangeView prefixView(String prefix) {
+            String fullPrefix = this.prefix+prefix;
+            int lo = this.index.lowerBound(fullPrefix, this.from, this.to);
+            int hi = this.index.upperBound(fullPrefix, lo, this.to);
+            return new RangeView(this.index, fullPrefix, lo, hi);
+        }
+
+        @Override
+        public Map<String,PrefixIndexedMap> breakDown(String prefix) {
+            Map<String,PrefixIndexedMap> result = new LinkedHashMap<String, PrefixIndexedMap>();
+            String fullPrefix = this.prefix+prefix;
+            int offset = fullPrefix.length();
+            int lo = this.index.lowerBound(fullPrefix, this.from, this.to);
+            int hi = this.index.upperBound(fullPrefix, lo, this.to);
+            int idx = lo;
+            while(idx<hi) {
+                String key = this.index.key(idx);
+                int breakIdx = key.indexOf('.', offset);
+                if(breakIdx<0) {
+                    idx++;
+                    continue;
+                }
+                String childPrefix = key.substring(0, breakIdx+1);
+                int end = this.index.upperBound(childPrefix, idx, hi);
+                result.put(key.substring(offset, breakIdx), new RangeView(this.index, childPrefix, idx, end));
+                idx = end;
+            }
+            return result;
+        }
+
+        @Override
+        public Collection<String> values() {
+            return new AbstractCollection<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new RangeIterator<String>() {
+                        @Override
+                        String element(int idx) {
+                            return index.value(idx);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return RangeView.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            if(this.entrySet==null) {
+                this.entrySet = new AbstractSet<Map.Entry<String,String>>() {
+                    @Override
+                    public Iterator<Map.Entry<String,String>> iterator() {
+                        return new RangeIterator<Map.Entry<String,String>>() {
+                            @Override
+                            Map.Entry<String,String> element(int idx) {
+                                return RangeView.this.entry(idx);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public Spliterator<Map.Entry<String,String>> spliterator() {
+                        // Splits by index range, so parallel streams divide the work evenly.
+                        return IntStream.range(from, to).mapToObj(RangeView.this::entry).spliterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return RangeView.this.size();
+                    }
+                };
+            }
+            return this.entrySet;
+        }
+
+        private Map.Entry<String,String> entry(int idx) {
+            return new AbstractMap.SimpleImmutableEntry<String, String>(this.index.key(idx).substring(this.prefix.length()), this.index.value(idx));
+        }
+
+        private abstract class RangeIterator<E> implements Iterator<E> {
+            private int next = from;
+
+            abstract E element(int idx);
+
+            @Override
+            public boolean hasNext() {
+                return this.next<to;
+            }
+
+            @Override
+            public E next() {
+                if(this.next>=to) {
+                    throw new NoSuchElementException();
+                }
+                return this.element(this.next++);
+            }
+        }
+    }
+}
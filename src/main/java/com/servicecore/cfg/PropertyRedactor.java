@@ -0,0 +1,205 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which property values must not be shown, by looking for sensitive slugs such as <code>password</code> or
+ * <code>token</code> anywhere in the property name, ignoring case.
+ * <p>All slugs are compiled into one Aho-Corasick automaton, so a name is checked in a single pass whatever the number of
+ * slugs, and the answer for each name is cached.  Instances are immutable and thread safe; share one between every group
+ * and the {@link ServiceConfiguration} that use the same slugs.</p>
+ */
+public final class PropertyRedactor {
+
+    public static final String MASK = "**********";
+
+    /** The slugs of the default redactor: the password slugs, plus the usual names for other secrets. */
+    public static final List<String> DEFAULT_SLUGS = Collections.unmodifiableList(Arrays.asList(
+            "pwd", "password", "passwd", "secret", "token", "apikey", "credential"));
+
+    public static final PropertyRedactor DEFAULT = new PropertyRedactor(DEFAULT_SLUGS);
+
+    /** Names are only cached until this many are known, so generated names cannot grow the cache without bound. */
+    private static final int MAX_CACHED_NAMES = 10000;
+
+    private final List<String> slugs;
+    /** Maps ASCII characters to their alphabet class; class 0 stands for every character no slug contains. */
+    private final int[] asciiClasses = new int[128];
+    /** The non-ASCII characters of the alphabet, sorted, for classes past the ASCII ones. */
+    private final char[] otherChars;
+    private final int[] otherClasses;
+    /** Transitions by state and alphabet class. */
+    private final int[][] next;
+    private final boolean[] accepting;
+    private final ConcurrentHashMap<String,Boolean> decisions = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param slugs The slugs which make a property name sensitive.  Case does not matter.
+     */
+    public PropertyRedactor(Collection<String> slugs) {
+        Set<String> distinct = new LinkedHashSet<String>();
+        for(String slug : slugs) {
+            distinct.add(lowerCase(slug));
+        }
+        this.slugs = Collections.unmodifiableList(new ArrayList<String>(distinct));
+
+        // Number the characters used by the slugs.
+        int classCount = 1;
+        StringBuilder others = new StringBuilder();
+        for(String slug : this.slugs) {
+            for(int i=0; i<slug.length(); i++) {
+                char c = slug.charAt(i);
+                if(c<128) {
+                    if(this.asciiClasses[c]==0) {
+                        this.asciiClasses[c] = classCount++;
+                    }
+                } else if(others.indexOf(String.valueOf(c))<0) {
+                    others.append(c);
+                }
+            }
+        }
+        this.otherChars = others.toString().toCharArray();
+        Arrays.sort(this.otherChars);
+        this.otherClasses = new int[this.otherChars.length];
+        for(int i=0; i<this.otherChars.length; i++) {
+            this.otherClasses[i] = classCount++;
+        }
+
+        // Build the trie of the slugs.
+        List<int[]> trie = new ArrayList<int[]>();
+        List<Boolean> ends = new ArrayList<Boolean>();
+        trie.add(newState(classCount));
+        ends.add(Boolean.FALSE);
+        for(String slug : this.slugs) {
+            int state = 0;
+            for(int i=0; i<slug.length(); i++) {
+                int cls = this.classOf(slug.charAt(i));
+                if(trie.get(state)[cls]<0) {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(newState(classCount));
+                    ends.add(Boolean.FALSE);
+                }
+                state = trie.get(state)[cls];
+            }
+            ends.set(state, Boolean.TRUE);
+        }
+
+        // Turn it into a complete automaton, breadth first, filling missing transitions from the failure links.
+        this.next = trie.toArray(new int[trie.size()][]);
+        this.accepting = new boolean[this.next.length];
+        int[] fail = new int[this.next.length];
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        this.accepting[0] = ends.get(0);
+        for(int cls=0; cls<classCount; cls++) {
+            int child = this.next[0][cls];
+            if(child<0) {
+                this.next[0][cls] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while(!queue.isEmpty()) {
+            int state = queue.poll();
+            this.accepting[state] = ends.get(state) || this.accepting[fail[state]];
+            for(int cls=0; cls<classCount; cls++) {
+                int child = this.next[state][cls];
+                if(child<0) {
+                    this.next[state][cls] = this.next[fail[state]][cls];
+                } else {
+                    fail[child] = this.next[fail[state]][cls];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private static int[] newState(int classCount) {
+        int[] state = new int[classCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static String lowerCase(String text) {
+        char[] chars = text.toCharArray();
+        for(int i=0; i<chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private int classOf(char c) {
+        c = Character.toLowerCase(c);
+        if(c<128) {
+            return this.asciiClasses[c];
+        }
+        int idx = Arrays.binarySearch(this.otherChars, c);
+        return (idx<0 ? 0 : this.otherClasses[idx]);
+    }
+
+    /**
+     * @return A redactor for the slugs of this one plus the given ones, e.g. for the custom slugs of a tenant.
+     */
+    public PropertyRedactor withSlugs(String... extraSlugs) {
+        List<String> combined = new ArrayList<String>(this.slugs);
+        combined.addAll(Arrays.asList(extraSlugs));
+        return new PropertyRedactor(combined);
+    }
+
+    /**
+     * @return The slugs, in lower case.
+     */
+    public List<String> getSlugs() {
+        return this.slugs;
+    }
+
+    /**
+     * @return <code>true</code> if the property name contains any of the slugs.
+     */
+    public boolean isSensitive(String name) {
+        Boolean cached = this.decisions.get(name);
+        if(cached!=null) {
+            return cached;
+        }
+        boolean sensitive = this.matches(name);
+        if(this.decisions.size()<MAX_CACHED_NAMES) {
+            this.decisions.put(name, sensitive);
+        }
+        return sensitive;
+    }
+
+    private boolean matches(String name) {
+        if(this.accepting[0]) {
+            return true;
+        }
+        int state = 0;
+        for(int i=0; i<name.length(); i++) {
+            state = this.next[state][this.classOf(name.charAt(i))];
+            if(this.accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The value, or the {@link #MASK} if the property name is sensitive.
+     */
+    public String redact(String name, String value) {
+        return (this.isSensitive(name) ? MASK : value);
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyRedactor"+this.slugs;
+    }
+}
@@ -0,0 +1,165 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * An immutable, flattened view of every property in the Spring environment at the time it was built.
+ * <p>The {@link ServiceConfiguration} builds one of these once and swaps it out wholesale on refresh, so readers never
+ * see a half-built snapshot and never pay for walking the property sources on the request path.</p>
+ * <p>Some property sources cannot be fully enumerated (JNDI, stubs) or match names loosely (the system environment maps
+ * <code>my.key</code> to <code>MY_KEY</code>).  When the snapshot was built from such sources, lookups that miss are
+ * passed on to the environment once and the answer is remembered for the lifetime of the snapshot.  Names which are
+ * certainly missing never get that far: a {@link MembershipFilter} of the names rules most of them out before the map
+ * is searched, and when only system environment sources made the snapshot incomplete, a filter of their relaxed names
+ * rules them out before the environment is asked.  The
+ * <code>${...}</code> placeholders in values are resolved before the snapshot is built, see {@link PlaceholderResolver},
+ * so {@link #get(String)} answers what {@link Environment#getProperty(String)} would have with a single lookup.</p>
+ */
+final class PropertySnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private static final Object MISSING = new Object();
+
+    /** Upper bound on remembered fallback lookups, so a caller probing random names cannot grow the snapshot forever. */
+    private static final int MAX_FALLBACK_ENTRIES = 10000;
+
+    private final long version;
+    private final PrefixIndexedMap properties;
+    private final Environment env;
+    private final boolean complete;
+    /** Rules out names the properties do not hold. */
+    private final MembershipFilter names;
+    /** Rules out names the environment cannot answer for either, or <code>null</code> if it cannot tell. */
+    private final PropertySourceFlattener.RelaxedNames relaxedNames;
+    private final ConcurrentHashMap<String,Object> fallbackCache = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @param properties The flattened properties, first property source wins.
+     * @param env The environment the properties were read from.
+     * @param complete Whether the map holds every name the environment can answer for.  If not, misses are passed on to the environment.
+     */
+    PropertySnapshot(Map<String,String> properties, Environment env, boolean complete) {
+        this(PropertyIndex.build(properties), env, complete, null);
+    }
+
+    /**
+     * @param properties The flattened properties, already indexed.  Their keys are read to build the name filter.
+     * @param relaxedNames If the properties are incomplete only because of system environment sources, the names those hold.
+     */
+    PropertySnapshot(PrefixIndexedMap properties, Environment env, boolean complete, PropertySourceFlattener.RelaxedNames relaxedNames) {
+        this(properties, properties.keySet(), env, complete, relaxedNames);
+    }
+
+    /**
+     * @param names The names of the properties, which are cheaper to read from here than from off-heap properties.
+     */
+    PropertySnapshot(PrefixIndexedMap properties, Collection<String> names, Environment env, boolean complete, PropertySourceFlattener.RelaxedNames relaxedNames) {
+        this(properties, MembershipFilter.of(names, names.size()), env, complete, relaxedNames);
+    }
+
+    /**
+     * @param names A filter of the names of the properties, such as {@link MappedPropertyFile.View#keyFilter()}, which is
+     *              built without decoding the mapped properties.
+     */
+    PropertySnapshot(PrefixIndexedMap properties, MembershipFilter names, Environment env, boolean complete, PropertySourceFlattener.RelaxedNames relaxedNames) {
+        this.version = VERSIONS.incrementAndGet();
+        this.properties = properties;
+        this.env = env;
+        this.complete = complete;
+        this.names = names;
+        this.relaxedNames = (complete ? null : relaxedNames);
+    }
+
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return The flattened properties as a read-only, prefix indexed map.
+     */
+    PrefixIndexedMap asMap() {
+        return this.properties;
+    }
+
+    int size() {
+        return this.properties.size();
+    }
+
+    /**
+     * @return The names which were added, removed or given a different value since the previous snapshot, in sorted order.
+     */
+    List<String> changedKeys(PropertySnapshot previous) {
+        if(previous.properties instanceof PropertyIndex.RangeView && this.properties instanceof PropertyIndex.RangeView) {
+            return PropertyIndex.changedKeys(((PropertyIndex.RangeView)previous.properties).getIndex(), ((PropertyIndex.RangeView)this.properties).getIndex());
+        }
+        if(previous.properties instanceof MappedPropertyFile.View || this.properties instanceof MappedPropertyFile.View) {
+            List<String> changed;
+            if(!(this.properties instanceof MappedPropertyFile.View)) {
+                changed = ((MappedPropertyFile.View)previous.properties).changedKeys(this.properties);
+            } else if(!(previous.properties instanceof MappedPropertyFile.View)) {
+                changed = ((MappedPropertyFile.View)this.properties).changedKeys(previous.properties);
+            } else {
+                changed = MappedPropertyFile.View.changedKeys((MappedPropertyFile.View)previous.properties, (MappedPropertyFile.View)this.properties);
+            }
+            Collections.sort(changed);
+            return changed;
+        }
+        List<String> changed = new ArrayList<String>();
+        for(Map.Entry<String,String> entry : previous.properties.entrySet()) {
+            if(!this.properties.containsKey(entry.getKey()) || !Objects.equals(entry.getValue(), this.properties.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for(String key : this.properties.keySet()) {
+            if(!previous.properties.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        Collections.sort(changed);
+        return changed;
+    }
+
+    String get(String name) {
+        if(this.names.mightContain(name)) {
+            String value = this.properties.get(name);
+            if(value!=null) {
+                return value;
+            }
+        }
+        return (this.mayBeInEnvironment(name) ? this.getFromEnvironment(name) : null);
+    }
+
+    boolean containsKey(String name) {
+        return (this.names.mightContain(name) && this.properties.containsKey(name))
+                || (this.mayBeInEnvironment(name) && this.getFromEnvironment(name)!=null);
+    }
+
+    /**
+     * @return Whether the environment may answer for a name the properties do not hold.
+     */
+    private boolean mayBeInEnvironment(String name) {
+        return !this.complete && (this.relaxedNames==null || this.relaxedNames.mightContain(name));
+    }
+
+    private String getFromEnvironment(String name) {
+        Object cached = this.fallbackCache.get(name);
+        if(cached==null) {
+            String value = this.env.getProperty(name);
+            cached = (value==null ? MISSING : value);
+            if(this.fallbackCache.size()<MAX_FALLBACK_ENTRIES) {
+                this.fallbackCache.put(name, cached);
+            }
+        }
+        return (cached==MISSING ? null : (String)cached);
+    }
+}
@@ -0,0 +1,266 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.CompositePropertySource;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.SystemEnvironmentPropertySource;
+
+/**
+ * Flattens a list of property sources into one map in which the first source to name a property wins.
+ * <p>Composite sources are expanded into their leaf sources, in order, and their names are enumerated on the calling
+ * thread, which also tells how large the environment is.  Converting every value to a string is independent work, so
+ * for environments with at least the threshold number of names it runs as fork-join tasks: one per leaf, each split
+ * further into chunks of names, since some sources wrap remote maps whose <code>getProperty</code> is slow.  Only the
+ * final merge, which decides who wins, runs in precedence order on the calling thread.  Smaller environments are
+ * converted on the calling thread too.</p>
+ */
+final class PropertySourceFlattener {
+
+    private static Logger LOG = LoggerFactory.getLogger(PropertySourceFlattener.class);
+
+    /** Default number of properties below which sources are read sequentially. */
+    static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /** Number of names one fork-join task converts before splitting. */
+    private static final int CHUNK_SIZE = 512;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    PropertySourceFlattener(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * The flattened properties, and whether they hold every name the sources can answer for.
+     */
+    static final class Result {
+        final Map<String,String> properties;
+        final boolean complete;
+        /** If the properties are incomplete only because of system environment sources, the names those hold; otherwise <code>null</code>. */
+        final RelaxedNames relaxedNames;
+
+        private Result(Map<String,String> properties, boolean complete, RelaxedNames relaxedNames) {
+            this.properties = properties;
+            this.complete = complete;
+            this.relaxedNames = relaxedNames;
+        }
+    }
+
+    /**
+     * The names of system environment sources, which answer for <code>my.key</code> when only <code>MY_KEY</code>,
+     * <code>my_key</code> or the like is set.  Such a source only tries variants of the name with <code>.</code> and
+     * <code>-</code> replaced by <code>_</code>, in upper case or not, so every variant it can find has the same canonical
+     * form: upper case, with <code>_</code> for <code>.</code> and <code>-</code>.  The filter holds the canonical forms of
+     * the variable names; a name whose canonical form it rules out is certainly not in the sources.
+     */
+    static final class RelaxedNames {
+        private static final int NOT_ASCII = 0x80000000;
+
+        private final MembershipFilter filter;
+
+        private RelaxedNames(MembershipFilter filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * @return The filter of the canonical names, or <code>null</code> if a name is not plain ASCII, whose upper case
+         *         depends on the locale, so no name can be ruled out.
+         */
+        static RelaxedNames of(List<String[]> nameLists) {
+            int count = 0;
+            for(String[] names : nameLists) {
+                count += names.length;
+            }
+            MembershipFilter filter = new MembershipFilter(count);
+            for(String[] names : nameLists) {
+                for(String name : names) {
+                    int hash = canonicalHash(name);
+                    if(hash==NOT_ASCII) {
+                        return null;
+                    }
+                    filter.add(hash);
+                }
+            }
+            return new RelaxedNames(filter);
+        }
+
+        /**
+         * @return <code>false</code> if none of the sources holds the name in any form.
+         */
+        boolean mightContain(String name) {
+            int hash = canonicalHash(name);
+            return hash==NOT_ASCII || this.filter.mightContain(hash);
+        }
+
+        /**
+         * @return The {@link String#hashCode()} of the canonical form of the name, computed without building it, or
+         *         {@link #NOT_ASCII}.  A name which really hashes to that just never gets ruled out.
+         */
+        private static int canonicalHash(String name) {
+            int hash = 0;
+            for(int i=0; i<name.length(); i++) {
+                char c = name.charAt(i);
+                if(c>=0x80) {
+                    return NOT_ASCII;
+                }
+                if(c=='.' || c=='-') {
+                    c = '_';
+                } else if(c>='a' && c<='z') {
+                    c -= ('a'-'A');
+                }
+                hash = 31*hash+c;
+            }
+            return hash;
+        }
+    }
+
+    Result flatten(Iterable<PropertySource<?>> sources) {
+        List<Leaf> leaves = new ArrayList<Leaf>();
+        for(PropertySource<?> ps : sources) {
+            addLeaves(leaves, ps);
+        }
+        long names = 0;
+        for(Leaf leaf : leaves) {
+            leaf.enumerate();
+            names += leaf.names.length;
+        }
+        if(names>=this.parallelThreshold) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for(Leaf leaf : leaves) {
+                tasks.add(this.pool.submit(new ConvertChunk(leaf, 0, leaf.names.length)));
+            }
+            for(ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } else {
+            for(Leaf leaf : leaves) {
+                leaf.convert(0, leaf.names.length);
+            }
+        }
+        return merge(leaves);
+    }
+
+    private static void addLeaves(List<Leaf> leaves, PropertySource<?> aPropSource) {
+        if(aPropSource instanceof CompositePropertySource) {
+            for(PropertySource<?> ps : ((CompositePropertySource)aPropSource).getPropertySources()) {
+                addLeaves(leaves, ps);
+            }
+        } else {
+            if(!(aPropSource instanceof EnumerablePropertySource<?>)) {
+                // note: Most descendants of PropertySource are EnumerablePropertySource. There are some
+                // few others like JndiPropertySource or StubPropertySource
+                LOG.warn("Given PropertySource is instanceof {} and cannot be iterated on", aPropSource.getClass().getName());
+            }
+            leaves.add(new Leaf(aPropSource));
+        }
+    }
+
+    /**
+     * Merges the leaves in precedence order.  The system environment answers for <code>my.key</code> when only
+     * <code>MY_KEY</code> is set, so a name enumerated by a lower precedence leaf may really be overridden by it; this keeps
+     * the result in line with {@link org.springframework.core.env.Environment#getProperty(String)}.
+     */
+    private static Result merge(List<Leaf> leaves) {
+        int expected = 0;
+        for(Leaf leaf : leaves) {
+            expected += leaf.names.length;
+        }
+        Map<String,String> result = new HashMap<String, String>(Math.max(16, expected*4/3));
+        List<PropertySource<?>> relaxedSources = new ArrayList<PropertySource<?>>();
+        List<String[]> relaxedNames = new ArrayList<String[]>();
+        boolean complete = true;
+        boolean enumerable = true;
+        for(Leaf leaf : leaves) {
+            for(int i=0; i<leaf.names.length; i++) {
+                String key = leaf.names[i];
+                if(result.containsKey(key)) {
+                    continue;
+                }
+                result.put(key, (relaxedSources.isEmpty() ? leaf.values[i] : relaxedValue(key, leaf.values[i], relaxedSources)));
+            }
+            if(leaf.source instanceof SystemEnvironmentPropertySource) {
+                relaxedSources.add(leaf.source);
+                relaxedNames.add(leaf.names);
+                complete = false;
+            } else if(!(leaf.source instanceof EnumerablePropertySource<?>)) {
+                complete = false;
+                enumerable = false;
+            }
+        }
+        return new Result(result, complete, (complete || !enumerable ? null : RelaxedNames.of(relaxedNames)));
+    }
+
+    private static String relaxedValue(String key, String value, List<PropertySource<?>> relaxedSources) {
+        for(PropertySource<?> ps : relaxedSources) {
+            Object relaxed = ps.getProperty(key);
+            if(relaxed!=null) {
+                return ServiceConfiguration.convertValueToString(relaxed);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * One leaf property source, with its names and converted values once read.
+     */
+    private static final class Leaf {
+        private static final String[] NO_NAMES = new String[0];
+
+        final PropertySource<?> source;
+        String[] names = NO_NAMES;
+        String[] values = NO_NAMES;
+
+        Leaf(PropertySource<?> source) {
+            this.source = source;
+        }
+
+        void enumerate() {
+            if(this.source instanceof EnumerablePropertySource<?>) {
+                this.names = ((EnumerablePropertySource<?>)this.source).getPropertyNames();
+                this.values = new String[this.names.length];
+            }
+        }
+
+        void convert(int from, int to) {
+            for(int i=from; i<to; i++) {
+                this.values[i] = ServiceConfiguration.convertValueToString(this.source.getProperty(this.names[i]));
+            }
+        }
+    }
+
+    private static final class ConvertChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Leaf leaf;
+        private final int from;
+        private final int to;
+
+        ConvertChunk(Leaf leaf, int from, int to) {
+            this.leaf = leaf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.to-this.from<=CHUNK_SIZE) {
+                this.leaf.convert(this.from, this.to);
+                return;
+            }
+            int mid = (this.from+this.to) >>> 1;
+            invokeAll(new ConvertChunk(this.leaf, this.from, mid), new ConvertChunk(this.leaf, mid, this.to));
+        }
+    }
+}
@@ -3,23 +3,78 @@ package com.servicecore.cfg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.core.env.*;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * The service configuration object to be used by all REST services.  This class takes its property values from the Spring environment, which is being populated by the Spring Cloud Config server.
+ * <p>Reads are served from a snapshot of the environment, which is replaced by {@link #refresh()}.  As a bean, the
+ * configuration refreshes itself whenever Spring Cloud publishes its <code>EnvironmentChangeEvent</code>, which it does
+ * after every change it makes to the environment, e.g. on <code>/refresh</code> or a bus event.  Whoever changes the
+ * environment some other way calls {@link #refresh()} or {@link #startAutoRefresh(long, TimeUnit)}.</p>
  */
 @Component("configuration")
-public class ServiceConfiguration extends AbstractServiceConfiguration{
+public class ServiceConfiguration extends AbstractServiceConfiguration implements ApplicationListener<ApplicationEvent> {
     private static Logger LOG = LoggerFactory.getLogger(ServiceConfiguration.class);
 
+    /** Published by Spring Cloud Context once it has changed the environment; matched by name, so it need not be on the class path. */
+    static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+
     private Environment env;
 
+    private final Object snapshotLock = new Object();
+
+    private volatile PropertySnapshot snapshot;
+    /** The placeholder dependencies of the current snapshot, or <code>null</code> if it was not resolved here.  Guarded by the snapshot lock. */
+    private PlaceholderResolver.Resolution resolution;
+    /** The properties of the current snapshot, the base of every overlay. */
+    private final Supplier<PrefixIndexedMap> currentProperties = new CurrentProperties();
+
+    /** Overlay groups with bound properties.  They read the current snapshot, but only learn of refreshes from here. */
+    private final Set<AbstractServiceConfiguration> overlayFollowers = Collections.newSetFromMap(new WeakHashMap<AbstractServiceConfiguration, Boolean>());
+
+    /** At most one registration per listener.  Changed under its own lock. */
+    private final List<ListenerRegistration> listeners = new CopyOnWriteArrayList<ListenerRegistration>();
+
+    /** Events installed under the snapshot lock, waiting to be sent to the listeners outside it, in order. */
+    private final Queue<ConfigurationChangeEvent> pendingEvents = new ConcurrentLinkedQueue<ConfigurationChangeEvent>();
+
+    /** Set while a thread sends the pending events, so that listeners get them one at a time and in order. */
+    private final AtomicBoolean notifying = new AtomicBoolean();
+
+    private final List<MaterializedGroup> materializedGroups = new CopyOnWriteArrayList<MaterializedGroup>();
+
+    private final AtomicInteger pinCount = new AtomicInteger();
+
+    private ScheduledExecutorService refreshExecutor;
+
+    private volatile boolean offHeap;
+
+    private volatile PropertySourceFlattener flattener = new PropertySourceFlattener(ForkJoinPool.commonPool(), PropertySourceFlattener.DEFAULT_PARALLEL_THRESHOLD);
+
     @Autowired
     public ServiceConfiguration(Environment env) {
         this.env = env;
@@ -54,78 +109,357 @@ public class ServiceConfiguration extends AbstractServiceConfiguration{
 
     @Override
     public String getPropertyValue(String name) {
-        return this.env.getProperty(name);
+        return this.getSnapshot().get(name);
     }
 
     public boolean contains(String name) {
-        return this.env.containsProperty(name);
+        return this.getSnapshot().containsKey(name);
     }
     
     public boolean containsValue(String name) {
-        return this.env.getProperty(name)!=null;
+        return this.getSnapshot().get(name)!=null;
     }
 
     /**
-     * Searches through the existing properties and collects all those with the given path prefix.
-     * @param path The path prefix of the properties to collect.
-     * @return A group collection of the properties found which shared the argumented path prefix.
+     * Re-reads every property source in the environment and atomically replaces the snapshot all reads are served from.
+     * Call this whenever the environment has been changed, e.g. after the Spring Cloud Config server pushed new values.
+     * Bound properties are brought up to date before this returns.  Change listeners are notified after the new snapshot
+     * has been published, outside of any lock, so a slow listener does not hold up reads or other refreshes; they are
+     * notified before this returns, unless another thread is notifying them already, which then sends this event as well.
+     * @return The properties which changed.
      */
-    public ServiceConfigurationGroup getStringGroup(String path) {
-        Map<String,String> result = new HashMap<String, String>();
-        Map<String,String> map = getAllProperties();
-        String name = null;
-        String pathPrefix = (path.endsWith(".") ? path : path+".");
-        for(Map.Entry<String, String> entry : map.entrySet()) {
-            String key = entry.getKey();
-            if(key.startsWith(pathPrefix)) {
-                name = StringUtils.replace(entry.getKey(),pathPrefix,"");
-                result.put(name, entry.getValue());
+    public ConfigurationChangeEvent refresh() {
+        ConfigurationChangeEvent event;
+        synchronized(this.snapshotLock) {
+            event = this.install(this.buildSnapshot());
+        }
+        this.sendPendingEvents();
+        LOG.info("Service configuration has been refreshed. properties={}, changed={}, pinned={}",this.snapshot.size(),event.size(),this.pinCount.get());
+        return event;
+    }
+
+    /**
+     * Refreshes the snapshot when the event says that the environment has changed.
+     */
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if(isEnvironmentChange(event) && this.isSnapshotBuilt()) {
+            this.refresh();
+        }
+    }
+
+    private static boolean isEnvironmentChange(ApplicationEvent event) {
+        for(Class<?> type = event.getClass(); type!=null; type = type.getSuperclass()) {
+            if(ENVIRONMENT_CHANGE_EVENT.equals(type.getName())) {
+                return true;
             }
         }
-        return new ServiceConfigurationGroup(path,result);
+        return false;
     }
 
     /**
-     * @return Returns all properties in one group object.
+     * Pins the current snapshot, so that a series of reads sees the same version of every property even if the
+     * configuration is refreshed meanwhile.  Pinning copies nothing; close the view once done with it, ideally with
+     * try-with-resources, so the replaced snapshot can be garbage collected.
+     * <p>Only the properties the snapshot holds are pinned.  A name it does not hold, such as another spelling of an
+     * environment variable, is looked up in the live environment the first time it is read against the snapshot, so it
+     * may see a change made after the pin; see {@link ConfigSnapshot}.</p>
+     * @return A read-only view of the current properties.
      */
-    public ServiceConfigurationGroup getAll() {
-        return new ServiceConfigurationGroup("",this.getAllProperties());
+    public ConfigSnapshot pin() {
+        ConfigSnapshot pinned = new ConfigSnapshot(this, this.getSnapshot());
+        pinned.setRedactor(this.getRedactor());
+        pinned.setMetrics(this.getMetrics());
+        this.pinCount.incrementAndGet();
+        return pinned;
     }
-    
-    private Map<String,String> getAllProperties() {
-        Map<String,String> result = new HashMap<String, String>();
-        ((ConfigurableEnvironment)this.env).getPropertySources().forEach(ps -> this.addAll(result, getAllProperties(ps)));
-        return result;
+
+    /**
+     * @return The number of views from {@link #pin()} which have not been closed yet.  A number which keeps growing points
+     *         at views which are never closed.
+     */
+    public int getPinCount() {
+        return this.pinCount.get();
     }
-    
-    private Map<String,String> getAllProperties(PropertySource<?> aPropSource) {
-        Map<String,String> result = new HashMap<>();
-
-        if(aPropSource instanceof CompositePropertySource) {
-            CompositePropertySource cps = (CompositePropertySource) aPropSource;
-            cps.getPropertySources().forEach( ps -> this.addAll(result, getAllProperties(ps)));
-            return result;
-        } else if(aPropSource instanceof EnumerablePropertySource<?>) {
-            EnumerablePropertySource<?> ps = (EnumerablePropertySource<?>) aPropSource;
-            Arrays.asList(ps.getPropertyNames()).forEach(key -> result.put(key, ServiceConfiguration.convertValueToString(ps.getProperty(key))));
-            return result;
-        } else {
-            // note: Most descendants of PropertySource are EnumerablePropertySource. There are some
-            // few others like JndiPropertySource or StubPropertySource
-            LOG.warn("Given PropertySource is instanceof {} and cannot be iterated on", aPropSource.getClass().getName());
+
+    void unpin() {
+        this.pinCount.decrementAndGet();
+    }
+
+    /**
+     * Writes the current properties to a binary snapshot file, which {@link #loadSnapshot(Path)} can serve them from later,
+     * e.g. to start while the Spring Cloud Config server is unreachable.  Placeholders are written resolved.
+     * @param file The file to write; an existing file is replaced atomically.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        MappedPropertyFile.write(this.getSnapshot().asMap(), file);
+        LOG.info("Service configuration snapshot has been written. file={}",file);
+    }
+
+    /**
+     * Serves the properties from a snapshot file written by {@link #writeSnapshot(Path)} until the next {@link #refresh()}.
+     * The file is memory mapped rather than read: lookups and groups binary search its index, and only the values actually
+     * read are decoded.  Names the file does not hold are still looked up in the environment.  Bound properties and change
+     * listeners are updated as for a refresh.
+     * @param file The snapshot file.
+     * @return The properties which changed.
+     * @throws IOException If the file cannot be mapped or is not a snapshot file.
+     */
+    public ConfigurationChangeEvent loadSnapshot(Path file) throws IOException {
+        MappedPropertyFile.View properties = MappedPropertyFile.open(file);
+        ConfigurationChangeEvent event;
+        synchronized(this.snapshotLock) {
+            this.resolution = null;
+            event = this.install(new PropertySnapshot(properties, properties.keyFilter(), this.env, false, null));
         }
-        return result;
+        this.sendPendingEvents();
+        LOG.info("Service configuration has been loaded from a snapshot. file={}, properties={}, changed={}",file,properties.size(),event.size());
+        return event;
     }
-    
-    private void addAll( Map<String, String> aBase, Map<String, String> aToBeAdded) {
-        for(Map.Entry<String, String> entry : aToBeAdded.entrySet()) {
-            if(aBase.containsKey(entry.getKey())) {
+
+    /**
+     * Replaces the current snapshot, then updates materialized groups and the bound properties of this object and of the
+     * overlays over it, and queues the event for the listeners.  Called holding the snapshot lock.
+     */
+    private ConfigurationChangeEvent install(PropertySnapshot current) {
+        PropertySnapshot previous = this.snapshot;
+        this.snapshot = current;
+        List<String> changed = (previous==null ? Collections.<String>emptyList() : current.changedKeys(previous));
+        ConfigurationChangeEvent event = new ConfigurationChangeEvent((previous==null ? current : previous).asMap(), current.asMap(), changed.toArray(new String[changed.size()]));
+        for(MaterializedGroup group : this.materializedGroups) {
+            group.update(current.asMap(), changed);
+        }
+        this.updateBoundProperties();
+        List<AbstractServiceConfiguration> followers;
+        synchronized(this.overlayFollowers) {
+            followers = new ArrayList<AbstractServiceConfiguration>(this.overlayFollowers);
+        }
+        for(AbstractServiceConfiguration follower : followers) {
+            follower.updateBoundProperties();
+        }
+        if(!event.isEmpty()) {
+            this.pendingEvents.add(event);
+        }
+        return event;
+    }
+
+    /**
+     * Sends the queued events to the listeners, unless another thread is doing so already.  Called without the snapshot
+     * lock, so listeners may read, refresh or materialize.
+     */
+    private void sendPendingEvents() {
+        while(!this.pendingEvents.isEmpty() && this.notifying.compareAndSet(false, true)) {
+            try {
+                ConfigurationChangeEvent event;
+                while((event = this.pendingEvents.poll())!=null) {
+                    this.notifyListeners(event);
+                }
+            } finally {
+                this.notifying.set(false);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for changes found by {@link #refresh()}.  Each refresh sends a listener at most one event, holding
+     * every change it registered for; registering a listener again adds to the names it listens to.
+     * @param listener The listener to notify.
+     * @param names The property names, or path prefixes covering every property below them, to listen to.  None means every property.
+     */
+    public void addChangeListener(ConfigurationChangeListener listener, String... names) {
+        synchronized(this.listeners) {
+            for(int i=0; i<this.listeners.size(); i++) {
+                ListenerRegistration registration = this.listeners.get(i);
+                if(registration.listener==listener) {
+                    this.listeners.set(i, registration.with(names));
+                    return;
+                }
+            }
+            this.listeners.add(new ListenerRegistration(listener, names.clone()));
+        }
+    }
+
+    /**
+     * Removes the registration of the listener.
+     */
+    public void removeChangeListener(ConfigurationChangeListener listener) {
+        synchronized(this.listeners) {
+            for(ListenerRegistration registration : this.listeners) {
+                if(registration.listener==listener) {
+                    this.listeners.remove(registration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #refresh()} on a background thread at a fixed rate, until {@link #stopAutoRefresh()} is called.
+     * Failing refreshes are logged and retried at the next period.
+     */
+    public synchronized void startAutoRefresh(long period, TimeUnit unit) {
+        this.stopAutoRefresh();
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "service-configuration-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refreshExecutor.scheduleAtFixedRate(() -> {
+            try {
+                this.refresh();
+            } catch(RuntimeException rtEx) {
+                LOG.error("Scheduled service configuration refresh failed.",rtEx);
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopAutoRefresh() {
+        if(this.refreshExecutor!=null) {
+            this.refreshExecutor.shutdownNow();
+            this.refreshExecutor = null;
+        }
+    }
+
+    private void notifyListeners(ConfigurationChangeEvent event) {
+        for(ListenerRegistration registration : this.listeners) {
+            ConfigurationChangeEvent filtered = event.filter(registration.names);
+            if(filtered.isEmpty()) {
                 continue;
             }
-            aBase.put( entry.getKey(), entry.getValue() );
+            try {
+                registration.listener.onChange(filtered);
+            } catch(RuntimeException rtEx) {
+                LOG.error("Configuration change listener failed. listener={}",registration.listener,rtEx);
+            }
+        }
+    }
+
+    @Override
+    Object getVersion() {
+        return this.getSnapshot();
+    }
+
+    /**
+     * @return Whether reads are served from a snapshot already, so they never wait for the property sources to be read.
+     */
+    boolean isSnapshotBuilt() {
+        return this.snapshot!=null;
+    }
+
+    PropertySnapshot getSnapshot() {
+        PropertySnapshot current = this.snapshot;
+        if(current==null) {
+            synchronized(this.snapshotLock) {
+                current = this.snapshot;
+                if(current==null) {
+                    current = this.buildSnapshot();
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private PropertySnapshot buildSnapshot() {
+        if(!(this.env instanceof ConfigurableEnvironment)) {
+            return new PropertySnapshot(new HashMap<String, String>(), this.env, false);
+        }
+        PropertySourceFlattener.Result flattened = this.flattener.flatten(((ConfigurableEnvironment)this.env).getPropertySources());
+        PropertySnapshot previous = this.snapshot;
+        this.resolution = PlaceholderResolver.resolve(flattened.properties, (flattened.complete ? null : this::getFromEnvironment),
+                this.resolution, (previous==null ? null : previous.asMap()));
+        if(this.offHeap) {
+            return new PropertySnapshot(MappedPropertyFile.offHeap(flattened.properties), flattened.properties.keySet(), this.env, flattened.complete, flattened.relaxedNames);
+        }
+        return new PropertySnapshot(PropertyIndex.build(flattened.properties), this.env, flattened.complete, flattened.relaxedNames);
+    }
+
+    /**
+     * Looks a placeholder up which the flattened properties do not hold, such as a relaxed environment variable name.
+     */
+    private String getFromEnvironment(String name) {
+        try {
+            return this.env.getProperty(name);
+        } catch(IllegalArgumentException iaEx) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the number of property names, counted over every enumerable source, from which {@link #refresh()} converts the
+     * property values in parallel, on the common fork-join pool.  Smaller environments are read on the calling thread.
+     */
+    public void setParallelRefreshThreshold(int threshold) {
+        this.flattener = new PropertySourceFlattener(ForkJoinPool.commonPool(), threshold);
+    }
+
+    /**
+     * Keeps the properties of every snapshot built from now on, beginning with the next {@link #refresh()}, as UTF-8 in
+     * direct buffers outside the heap, for very large configurations which burden the garbage collector.  Lookups go
+     * through a hash index over the buffers, and values are decoded whenever they are read rather than kept as strings.
+     * The buffers of a replaced snapshot are freed once it is garbage collected.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Searches through the existing properties and collects all those with the given path prefix.
+     * @param path The path prefix of the properties to collect.
+     * @return A group collection of the properties found which shared the argumented path prefix.
+     */
+    public ServiceConfigurationGroup getStringGroup(String path) {
+        long start = this.startTimer();
+        String pathPrefix = (path.endsWith(".") ? path : path+".");
+        ServiceConfigurationGroup group = this.inheritSettings(new ServiceConfigurationGroup(path,this.getSnapshot().asMap().prefixView(pathPrefix),true));
+        this.stopTimer(ConfigurationMetrics.Operation.GET_STRING_GROUP, start);
+        return group;
+    }
+
+    /**
+     * Creates a group, like {@link #getStringGroup(String)}, which is kept up to date through every refresh until it is
+     * closed.  A refresh only rebuilds the parts of it which have changed.
+     * @param path The path prefix of the properties to collect.  Empty for every property.
+     * @return The group.
+     */
+    public MaterializedGroup materialize(String path) {
+        synchronized(this.snapshotLock) {
+            ServiceConfigurationGroup group = (path.isEmpty() ? this.getAll() : this.getStringGroup(path));
+            MaterializedGroup materialized = new MaterializedGroup(this, path, group);
+            this.materializedGroups.add(materialized);
+            return materialized;
         }
     }
 
+    void removeMaterializedGroup(MaterializedGroup group) {
+        this.materializedGroups.remove(group);
+    }
+
+    /**
+     * Creates a group of the properties under a path with the given overrides on top, such as one tenant's view of the
+     * shared configuration.  The group stores only the overrides; every other read goes to the current snapshot, so
+     * the group follows each refresh without being recreated, and creating it costs as much as indexing the overrides.
+     * Break outs and break downs of the group are overlays as well, and properties bound to any of them are updated by
+     * each refresh.
+     * @param path The path prefix of the properties.  Empty for every property.
+     * @param overrides The properties to override, keyed without the path prefix.  A <code>null</code> value hides the property.
+     * @return The overlay group.
+     */
+    public ServiceConfigurationGroup overlay(String path, Map<String,String> overrides) {
+        String pathPrefix = (path.isEmpty() || path.endsWith(".") ? path : path+".");
+        return this.inheritSettings(new ServiceConfigurationGroup(path,new OverlayMap(this.currentProperties,pathPrefix,overrides),true));
+    }
+
+    /**
+     * @return Returns all properties in one group object.
+     */
+    public ServiceConfigurationGroup getAll() {
+        long start = this.startTimer();
+        ServiceConfigurationGroup group = this.inheritSettings(new ServiceConfigurationGroup("",this.getSnapshot().asMap(),true));
+        this.stopTimer(ConfigurationMetrics.Operation.GET_ALL, start);
+        return group;
+    }
+    
     /**
      * Convenience method for getting an Integer property value from a {@link AbstractServiceConfiguration} implementation, and which also checks if the configuration object is <code>null</code>.
      * @param configuration The configuration object to extract the value from.
@@ -192,5 +526,42 @@ public class ServiceConfiguration extends AbstractServiceConfiguration{
         return (configuration!=null ? configuration.getLong(key,defaultVal) : defaultVal);
     }
 
+    /**
+     * Supplies the current snapshot to overlays, which keep it to have their groups' bound properties updated on refresh.
+     */
+    final class CurrentProperties implements Supplier<PrefixIndexedMap> {
 
-}
\ No newline at end of file
+        @Override
+        public PrefixIndexedMap get() {
+            return ServiceConfiguration.this.getSnapshot().asMap();
+        }
+
+        void follow(AbstractServiceConfiguration group) {
+            synchronized(ServiceConfiguration.this.overlayFollowers) {
+                ServiceConfiguration.this.overlayFollowers.add(group);
+            }
+        }
+    }
+
+    private static class ListenerRegistration {
+        private final ConfigurationChangeListener listener;
+        private final String[] names;
+
+        private ListenerRegistration(ConfigurationChangeListener listener, String[] names) {
+            this.listener = listener;
+            this.names = names;
+        }
+
+        /**
+         * @return A registration of the listener for these names as well.  No names, on either side, means every property.
+         */
+        private ListenerRegistration with(String[] moreNames) {
+            if(this.names.length==0 || moreNames.length==0) {
+                return new ListenerRegistration(this.listener, new String[0]);
+            }
+            String[] combined = Arrays.copyOf(this.names, this.names.length+moreNames.length);
+            System.arraycopy(moreNames, 0, combined, this.names.length, moreNames.length);
+            return new ListenerRegistration(this.listener, combined);
+        }
+    }
+}
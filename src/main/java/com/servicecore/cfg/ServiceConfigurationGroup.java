@@ -1,8 +1,9 @@
 package com.servicecore.cfg;
 
-import org.apache.commons.lang3.StringUtils;
-
+import java.io.IOException;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is a nifty little class that houses a set of properties that are related by a common path prefix.
@@ -10,6 +11,7 @@ import java.util.*;
  */
 public class ServiceConfigurationGroup extends AbstractServiceConfiguration implements Iterable<String> {
     
+    /** The slugs groups used to mask before {@link PropertyRedactor}; the default redactor still covers all of them. */
     public static final List<String> PASSWORD_SLUGS = Collections.unmodifiableList(new ArrayList<String> () {{
         add("pwd");
         add("password");
@@ -17,11 +19,31 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
     }});
     
     private String path;
-    private Map<String,String> propMap = new HashMap<String,String>();
+    /** The path and a dot, worked out on first use. */
+    private String keyPrefix;
+    /** Volatile so that {@link ConcurrentServiceConfigurationGroup} can publish replacement maps; methods read it once into a local. */
+    volatile Map<String,String> propMap = new HashMap<String,String>();
+    /** Set while the property map is read-only storage shared with other groups; the first write takes a private copy. */
+    private boolean shared;
+    /** Replaced on every write.  <code>null</code> while the property map belongs to the caller, who may change it behind our back. */
+    private Object version = new Object();
     
     public ServiceConfigurationGroup(String path, Map<String,String> propMap) {
         this.path = path;
         this.propMap = (propMap==null ? this.propMap : propMap);
+        this.version = (propMap==null ? this.version : null);
+    }
+
+    /**
+     * Creates a group over a read-only property map that may be shared, such as a {@link ServiceConfiguration} snapshot.
+     * @param path The path prefix of the group.
+     * @param propMap The property map; it is never written to.
+     * @param shared <code>true</code> if the map must be copied before the group is modified.
+     */
+    ServiceConfigurationGroup(String path, Map<String,String> propMap, boolean shared) {
+        this(path, propMap);
+        this.shared = shared;
+        this.version = (shared ? new Object() : null);
     }
 
     public ServiceConfigurationGroup(String path) {
@@ -47,20 +69,142 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
         return this.path;
     }
 
+    @Override
+    String getKeyPrefix() {
+        String prefix = this.keyPrefix;
+        if(prefix==null && this.path!=null && !this.path.isEmpty()) {
+            prefix = (this.path.endsWith(".") ? this.path : this.path+".");
+            this.keyPrefix = prefix;
+        }
+        return prefix;
+    }
+
     public void add(String name, String value) {
-        this.propMap.put(name, value);
+        if(!this.addOverrides(Collections.singletonMap(name, value))) {
+            this.writableMap().put(name, value);
+        }
+        this.changed();
     }
 
     public void addAll(Map<String, String> hashMap) {
-        this.propMap.putAll(hashMap);
+        if(!this.addOverrides(hashMap)) {
+            this.writableMap().putAll(hashMap);
+        }
+        this.changed();
     }
 
     public Map<String,String> setAll(Map<String, String> hashMap) {
         Map<String,String> oldMap = this.propMap;
         this.propMap = new HashMap<String, String>(hashMap);
+        this.shared = false;
+        this.version = new Object();
+        this.changed();
         return oldMap;
     }
 
+    /**
+     * @return The property map, ready to be written to.  Takes a private copy if the map is shared.
+     */
+    private Map<String,String> writableMap() {
+        if(this.shared) {
+            this.propMap = new HashMap<String, String>(this.propMap);
+            this.shared = false;
+        }
+        return this.propMap;
+    }
+
+    /**
+     * Writes to an overlay group by adding to its overrides, so the shared base is not copied.
+     * @return <code>true</code> if the properties were written.
+     */
+    private boolean addOverrides(Map<String,String> properties) {
+        Map<String,String> map = this.propMap;
+        if(this.shared && map instanceof OverlayMap && !properties.containsValue(null)) {
+            this.propMap = ((OverlayMap)map).with(properties);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks cached values stale and updates bound properties after a write.
+     */
+    private void changed() {
+        if(this.version!=null) {
+            this.version = new Object();
+        }
+        this.updateBoundProperties();
+    }
+
+    /**
+     * Asks the configuration an overlay follows to update this group's bound properties after each refresh, since the
+     * group is not told that its values changed.
+     */
+    @Override
+    void propertyBound() {
+        Map<String,String> map = this.propMap;
+        if(this.shared && map instanceof OverlayMap) {
+            ((OverlayMap)map).follow(this);
+        }
+    }
+
+    @Override
+    Object getVersion() {
+        Map<String,String> map = this.propMap;
+        if(this.shared && map instanceof OverlayMap) {
+            // The base of an overlay may be replaced under the group.
+            return ((OverlayMap)map).getVersion();
+        }
+        return this.version;
+    }
+
+    /**
+     * Points a group over shared storage at equal properties in newer storage, so that it stops holding on to the old
+     * storage.  Values and version stay as they are.  Does nothing once the group has been written to.
+     */
+    void rebase(Map<String,String> map) {
+        if(this.shared) {
+            this.propMap = map;
+        }
+    }
+
+    /**
+     * Creates a group with the given properties on top of this group's, such as the overrides of one tenant.  The new
+     * group shares this group's properties instead of copying them, and writing to it only adds to its overrides.
+     * Creating many overlays of a large group that is not a view, such as one built with {@link #add(String, String)},
+     * indexes it every time; call {@link #compact()} on it first, or use {@link ServiceConfiguration#overlay(String, Map)}.
+     * @param overrides The properties to override, keyed like this group's.  A <code>null</code> value hides the property.
+     * @return The overlay group.
+     */
+    public ServiceConfigurationGroup overlay(Map<String,String> overrides) {
+        Map<String,String> map = this.propMap;
+        if(this.shared && map instanceof OverlayMap) {
+            return this.inheritSettings(new ServiceConfigurationGroup(this.path,((OverlayMap)map).with(overrides),true));
+        }
+        PrefixIndexedMap base = (this.shared && map instanceof PrefixIndexedMap ? (PrefixIndexedMap)map : PropertyIndex.build(map));
+        return this.inheritSettings(new ServiceConfigurationGroup(this.path,new OverlayMap(() -> base, "", overrides),true));
+    }
+
+    /**
+     * Creates a copy of this group in compact storage, for very large groups that are kept around for a long time.  The
+     * copy stores each key as ids of its segments, interned once for every compact group, keeps one instance of equal
+     * values within this copy only, and hands out break outs and break downs as views of the same storage.  Writing to the copy turns it back into a plain group.
+     * @return The compact copy.
+     */
+    public ServiceConfigurationGroup compact() {
+        return this.inheritSettings(new ServiceConfigurationGroup(this.path,CompactPropertyMap.build(this.propMap, SymbolTable.SHARED),true));
+    }
+
+    /**
+     * Creates a copy of this group whose keys and values are kept as UTF-8 in direct buffers, outside the heap, for groups
+     * so large that they burden the garbage collector.  Values are decoded whenever they are read, and break outs and
+     * break downs are views of the same buffers.  Writing to the copy turns it back into a plain group.
+     * @return The off-heap copy.
+     */
+    public ServiceConfigurationGroup offHeap() {
+        return this.inheritSettings(new ServiceConfigurationGroup(this.path,MappedPropertyFile.offHeap(this.propMap),true));
+    }
+
     public Set<String> keySet() {
         return new HashSet<String>(this.propMap.keySet());
     }
@@ -76,6 +220,67 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
         return new HashMap<String, String>(this.propMap);
     }
 
+    /**
+     * Returns a read-only view of the properties, which copies nothing.  The view reads through to this group, so it shows
+     * later writes; like the views of a {@link HashMap}, iterating it while the group is written to may fail.
+     * @return A live, read-only view of the property names and values.
+     */
+    public Map<String,String> asMap() {
+        return new LiveView();
+    }
+
+    /**
+     * @return A live, read-only view of the property names.  See {@link #asMap()}.
+     */
+    public Set<String> keySetView() {
+        return this.asMap().keySet();
+    }
+
+    /**
+     * @return A live, read-only view of the property values.  See {@link #asMap()}.
+     */
+    public Collection<String> valuesView() {
+        return this.asMap().values();
+    }
+
+    /**
+     * @return A spliterator over the current properties, whose entries cannot be modified.  It splits evenly for parallel traversal.
+     */
+    public Spliterator<Map.Entry<String,String>> entrySpliterator() {
+        return Collections.unmodifiableMap(this.propMap).entrySet().spliterator();
+    }
+
+    /**
+     * @return A sequential stream of the current properties.
+     */
+    public Stream<Map.Entry<String,String>> stream() {
+        return StreamSupport.stream(this.entrySpliterator(), false);
+    }
+
+    /**
+     * @return A possibly parallel stream of the current properties.
+     */
+    public Stream<Map.Entry<String,String>> parallelStream() {
+        return StreamSupport.stream(this.entrySpliterator(), true);
+    }
+
+    /**
+     * Creates a settings object from the properties of this group, see {@link ConfigurationBinder}.
+     * @param type The class of the settings object; it needs a constructor without arguments.
+     * @return The new settings object.
+     */
+    public <T> T bind(Class<T> type) {
+        return ConfigurationBinder.bind(this, type);
+    }
+
+    /**
+     * Sets the fields of a settings object from the properties of this group, see {@link ConfigurationBinder}.
+     * @return The settings object.
+     */
+    public <T> T bindTo(T target) {
+        return ConfigurationBinder.bindTo(this, target);
+    }
+
     /**
      * Breaks out a subset of the properties matching the given path.
      * <p>Given this grouping:
@@ -102,20 +307,34 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
      * @return A new configuration group containing entries which matched the path.
      */
     public ServiceConfigurationGroup breakOut(String path) {
+        long start = this.startTimer();
+        try {
+            return this.breakOutUntimed(path);
+        } finally {
+            this.stopTimer(ConfigurationMetrics.Operation.BREAK_OUT, start);
+        }
+    }
+
+    private ServiceConfigurationGroup breakOutUntimed(String path) {
         ServiceConfigurationGroup breakGroup = null;
         String key = null;
         String value = null;
         String breakId = null;
         String breakKey = null;
         path = (path.endsWith(".") ? path : path+".");
-        for(Map.Entry<String,String> entry : this.propMap.entrySet()) {
+        Map<String,String> map = this.propMap;
+        if(map instanceof PrefixIndexedMap) {
+            PrefixIndexedMap view = ((PrefixIndexedMap)map).prefixView(path);
+            return (view.isEmpty() ? null : this.inheritSettings(new ServiceConfigurationGroup(this.path+"."+path.substring(0,path.length()-1),view,true)));
+        }
+        for(Map.Entry<String,String> entry : map.entrySet()) {
             key = entry.getKey();
             value = entry.getValue();
             if(key.startsWith(path)) {
                 breakId = key.substring(0,path.length()-1);
                 breakKey = key.substring(path.length());
                 if(breakGroup==null) {
-                    breakGroup = new ServiceConfigurationGroup(this.path+"."+breakId);
+                    breakGroup = this.inheritSettings(new ServiceConfigurationGroup(this.path+"."+breakId));
                 }
                 breakGroup.add(breakKey,value);
             }
@@ -162,6 +381,19 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
      * @return
      */
     public Map<String,ServiceConfigurationGroup> breakDownToMap() {
+        long start = this.startTimer();
+        try {
+            return this.breakDownUntimed();
+        } finally {
+            this.stopTimer(ConfigurationMetrics.Operation.BREAK_DOWN, start);
+        }
+    }
+
+    private Map<String,ServiceConfigurationGroup> breakDownUntimed() {
+        Map<String,String> map = this.propMap;
+        if(map instanceof PrefixIndexedMap) {
+            return this.breakDownIndexed((PrefixIndexedMap)map, "");
+        }
         Map<String,ServiceConfigurationGroup> breakMap = new HashMap<String, ServiceConfigurationGroup>();
         ServiceConfigurationGroup breakGroup = null;
         String key = null;
@@ -169,7 +401,7 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
         int breakIdx = 0;
         String breakId = null;
         String breakKey = null;
-        for(Map.Entry<String,String> entry : this.propMap.entrySet()) {
+        for(Map.Entry<String,String> entry : map.entrySet()) {
             key = entry.getKey();
             value = entry.getValue();
             breakIdx = key.indexOf(".");
@@ -180,7 +412,7 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
             breakKey = key.substring(breakIdx+1);
             breakGroup = breakMap.get(breakId);
             if(breakGroup==null) {
-                breakGroup = new ServiceConfigurationGroup(this.path+"."+breakId);
+                breakGroup = this.inheritSettings(new ServiceConfigurationGroup(this.path+"."+breakId));
                 breakMap.put(breakId,breakGroup);
             }
             breakGroup.add(breakKey,value);
@@ -188,6 +420,17 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
         return breakMap;
     }
 
+    /**
+     * Breaks down indexed properties by taking each child straight from the index, without visiting the other keys.
+     */
+    private Map<String,ServiceConfigurationGroup> breakDownIndexed(PrefixIndexedMap map, String prefix) {
+        Map<String,ServiceConfigurationGroup> breakMap = new HashMap<String, ServiceConfigurationGroup>();
+        for(Map.Entry<String,PrefixIndexedMap> child : map.breakDown(prefix).entrySet()) {
+            breakMap.put(child.getKey(), this.inheritSettings(new ServiceConfigurationGroup(this.path+"."+prefix+child.getKey(),child.getValue(),true)));
+        }
+        return breakMap;
+    }
+
 
     /**
      * Breaks down the property group like {@link #breakDownToMap(String)}, but only returns the resultant groups without the map and broken down property prefix keys.
@@ -204,9 +447,22 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
      * @return
      */
     public Map<String,ServiceConfigurationGroup> breakDownToMap(String prefix) {
+        long start = this.startTimer();
+        try {
+            return this.breakDownUntimed(prefix);
+        } finally {
+            this.stopTimer(ConfigurationMetrics.Operation.BREAK_DOWN, start);
+        }
+    }
+
+    private Map<String,ServiceConfigurationGroup> breakDownUntimed(String prefix) {
         Map<String,ServiceConfigurationGroup> breakMap = new HashMap<String, ServiceConfigurationGroup>();
         ServiceConfigurationGroup breakGroup = null;
         prefix = (prefix.endsWith(".") ? prefix : prefix+".");
+        Map<String,String> map = this.propMap;
+        if(map instanceof PrefixIndexedMap) {
+            return this.breakDownIndexed((PrefixIndexedMap)map, prefix);
+        }
         String key = null;
         String trunkKey = null;
         String value = null;
@@ -214,7 +470,7 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
         String breakId = null;
         String breakKey = null;
 
-        for(Map.Entry<String,String> entry : this.propMap.entrySet()) {
+        for(Map.Entry<String,String> entry : map.entrySet()) {
             key = entry.getKey();
             if(key.startsWith(prefix)) {
                 trunkKey = key.substring(prefix.length());
@@ -227,7 +483,7 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
                 breakKey = trunkKey.substring(breakIdx+1);
                 breakGroup = breakMap.get(breakId);
                 if(breakGroup==null) {
-                    breakGroup = new ServiceConfigurationGroup(this.path+"."+prefix+breakId);
+                    breakGroup = this.inheritSettings(new ServiceConfigurationGroup(this.path+"."+prefix+breakId));
                     breakMap.put(breakId,breakGroup);
                 }
                 breakGroup.add(breakKey,value);
@@ -259,23 +515,81 @@ public class ServiceConfigurationGroup extends AbstractServiceConfiguration impl
     }
     
     public String toString(String separator) {
-        List<String> entries = new ArrayList<String>();
+        StringBuilder result = new StringBuilder();
+        try {
+            this.writeTo(result, separator);
+        } catch(IOException ioEx) {
+            // StringBuilder never throws.
+            throw new IllegalStateException(ioEx);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes the properties like {@link #toString(String)}, one entry at a time, masking passwords as it goes.  Use this to
+     * dump large groups to a log or file without building the whole text first.
+     * @param out Where to write the properties.
+     * @param separator The text written between two entries.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(Appendable out, String separator) throws IOException {
+        PropertyRedactor redactor = this.getRedactor();
         String key = null;
-        String value = null;
+        boolean first = true;
         for(Map.Entry<String,String> entry : this.propMap.entrySet()) {
+            if(!first) {
+                out.append(separator);
+            }
+            first = false;
             key = entry.getKey();
-            value = (this.checkFromList(key,PASSWORD_SLUGS) ? "**********" : entry.getValue());
-            entries.add(this.getPath()+"."+key+"="+value);
+            out.append(this.getPath()).append('.').append(key).append('=');
+            out.append(redactor.redact(key, entry.getValue()));
         }
-        return String.join(separator, entries);
     }
     
-    boolean checkFromList(String text, List<String> targets) {
-        for(String target : targets) {
-            if(StringUtils.contains(text,target)) {
-                return true;
-            }
+    /**
+     * Read-only view which goes back to the group's current property map on every call.
+     */
+    private final class LiveView extends AbstractMap<String,String> {
+
+        @Override
+        public String get(Object key) {
+            return propMap.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return propMap.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return propMap.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return propMap.isEmpty();
+        }
+
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            return new AbstractSet<Map.Entry<String,String>>() {
+                @Override
+                public Iterator<Map.Entry<String,String>> iterator() {
+                    return Collections.unmodifiableMap(propMap).entrySet().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return propMap.size();
+                }
+
+                @Override
+                public Spliterator<Map.Entry<String,String>> spliterator() {
+                    return entrySpliterator();
+                }
+            };
         }
-        return false;
     }
 }
@@ -0,0 +1,42 @@
+package com.servicecore.cfg;
+
+/**
+ * A bound string property.  See {@link BoundProperty}.
+ */
+public final class StringProperty extends BoundProperty {
+
+    private final String defaultValue;
+    private volatile String value;
+
+    StringProperty(String name, String defaultValue) {
+        super(name);
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * @return The current value of the property, or the default if it has no valid value.
+     */
+    public String get() {
+        return this.value;
+    }
+
+    public String getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    @Override
+    Object getBoxedDefault() {
+        return this.defaultValue;
+    }
+
+    @Override
+    void load(AbstractServiceConfiguration configuration) {
+        this.value = configuration.loadString(this.getName(), this.defaultValue);
+    }
+
+    @Override
+    String getValueAsString() {
+        return String.valueOf(this.value);
+    }
+}
@@ -0,0 +1,138 @@
+package com.servicecore.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits property values on a literal separator, without compiling a regular expression.  The separator must not be empty.
+ */
+final class StringTokens {
+
+    private static final String REGEX_CHARS = ".$|()[]{}^?*+\\";
+
+    private StringTokens() {
+    }
+
+    /**
+     * @return <code>true</code> if the separator means the same as a regular expression and as plain text.
+     */
+    static boolean isLiteral(String separator) {
+        if(separator.isEmpty()) {
+            return false;
+        }
+        for(int i=0; i<separator.length(); i++) {
+            if(REGEX_CHARS.indexOf(separator.charAt(i))>=0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link String#split(String)} for a literal, non-empty separator: trailing empty tokens are dropped.
+     */
+    static String[] split(String value, String separator) {
+        int next = value.indexOf(separator);
+        if(next<0) {
+            return new String[]{value};
+        }
+        List<String> tokens = new ArrayList<String>();
+        int start = 0;
+        while(next>=0) {
+            tokens.add(value.substring(start, next));
+            start = next+separator.length();
+            next = value.indexOf(separator, start);
+        }
+        tokens.add(value.substring(start));
+        int size = tokens.size();
+        while(size>0 && tokens.get(size-1).isEmpty()) {
+            size--;
+        }
+        return tokens.subList(0, size).toArray(new String[size]);
+    }
+
+    /**
+     * @param trim Whether to trim the tokens and drop the empty ones.  If not, the tokens are those of {@link #split(String, String)}.
+     * @return The tokens as an immutable list.
+     */
+    static List<String> tokens(String value, String separator, boolean trim) {
+        if(!trim) {
+            return Collections.unmodifiableList(Arrays.asList(split(value, separator)));
+        }
+        List<String> tokens = new ArrayList<String>();
+        forEach(value, separator, true, (source, start, end) -> tokens.add(source.substring(start, end)));
+        return Collections.unmodifiableList(Arrays.asList(tokens.toArray(new String[tokens.size()])));
+    }
+
+    /**
+     * Hands the bounds of every token to the consumer, in order, without allocating.
+     */
+    static void forEach(String value, String separator, boolean trim, TokenConsumer consumer) {
+        if(!trim && value.indexOf(separator)<0) {
+            consumer.accept(value, 0, value.length());
+            return;
+        }
+        // Without trimming, mirror split(): empty tokens are held back until a non-empty one follows them.
+        int pendingEmpty = 0;
+        int start = 0;
+        while(true) {
+            int next = value.indexOf(separator, start);
+            int end = (next<0 ? value.length() : next);
+            int tokenStart = start;
+            int tokenEnd = end;
+            if(trim) {
+                while(tokenStart<tokenEnd && value.charAt(tokenStart)<=' ') {
+                    tokenStart++;
+                }
+                while(tokenEnd>tokenStart && value.charAt(tokenEnd-1)<=' ') {
+                    tokenEnd--;
+                }
+            }
+            if(tokenStart==tokenEnd) {
+                pendingEmpty += (trim ? 0 : 1);
+            } else {
+                for(; pendingEmpty>0; pendingEmpty--) {
+                    consumer.accept(value, tokenStart, tokenStart);
+                }
+                consumer.accept(value, tokenStart, tokenEnd);
+            }
+            if(next<0) {
+                return;
+            }
+            start = next+separator.length();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if one of the tokens equals the given token.  Does not allocate unless the token is empty.
+     */
+    static boolean contains(String value, String separator, boolean trim, String token) {
+        if(token.isEmpty()) {
+            return tokens(value, separator, trim).contains(token);
+        }
+        int start = 0;
+        while(true) {
+            int next = value.indexOf(separator, start);
+            int end = (next<0 ? value.length() : next);
+            int tokenStart = start;
+            int tokenEnd = end;
+            if(trim) {
+                while(tokenStart<tokenEnd && value.charAt(tokenStart)<=' ') {
+                    tokenStart++;
+                }
+                while(tokenEnd>tokenStart && value.charAt(tokenEnd-1)<=' ') {
+                    tokenEnd--;
+                }
+            }
+            if(tokenEnd-tokenStart==token.length() && value.regionMatches(tokenStart, token, 0, token.length())) {
+                return true;
+            }
+            if(next<0) {
+                return false;
+            }
+            start = next+separator.length();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.servicecore.cfg;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only table of key segments shared by every {@link CompactPropertyMap}.  Segments get a small integer id, so a
+ * key is stored as a few ints rather than a string of its own.  Entries are never removed: the table only grows with the
+ * number of distinct segments, which in practice is far smaller than the number of keys across all groups and tenants.
+ * Values are not kept here, as they may be secrets and change with every refresh.
+ */
+final class SymbolTable {
+
+    static final SymbolTable SHARED = new SymbolTable();
+
+    private final ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] symbols = new String[256];
+    private int count;
+
+    /**
+     * @return The id of the symbol, assigning it one if it is new.
+     */
+    int intern(String symbol) {
+        Integer id = this.ids.get(symbol);
+        if(id!=null) {
+            return id;
+        }
+        synchronized(this) {
+            id = this.ids.get(symbol);
+            if(id==null) {
+                String[] current = this.symbols;
+                if(this.count==current.length) {
+                    current = Arrays.copyOf(current, current.length*2);
+                }
+                current[this.count] = symbol;
+                this.symbols = current;
+                id = this.count++;
+                this.ids.put(symbol, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return The id of the symbol, or -1 if it was never interned.
+     */
+    int lookup(String symbol) {
+        Integer id = this.ids.get(symbol);
+        return (id==null ? -1 : id);
+    }
+
+    /**
+     * @return The symbols by id.  The array holds every id handed out before this call; later ones may need a fresh call.
+     */
+    String[] getSymbols() {
+        return this.symbols;
+    }
+}
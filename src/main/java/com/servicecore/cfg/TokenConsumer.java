@@ -0,0 +1,15 @@
+package com.servicecore.cfg;
+
+/**
+ * Receives the tokens of a property value one at a time, see
+ * {@link AbstractServiceConfiguration#forEachToken(String, String, boolean, TokenConsumer)}.
+ */
+public interface TokenConsumer {
+
+    /**
+     * @param source The property value.
+     * @param start The index of the first character of the token in the value.
+     * @param end The index after the last character of the token, so the token is <code>source.substring(start,end)</code>.
+     */
+    void accept(String source, int start, int end);
+}
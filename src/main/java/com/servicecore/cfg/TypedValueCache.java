@@ -0,0 +1,93 @@
+package com.servicecore.cfg;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-key cache of converted property values and token lists for one version of a configuration's data.  A configuration drops its cache
+ * and starts a new one as soon as its version changes, so entries never have to be invalidated one by one.
+ */
+final class TypedValueCache {
+
+    enum Type {
+        INTEGER("an integer"),
+        LONG("a long"),
+        DOUBLE("a double"),
+        FLOAT("a float"),
+        BOOLEAN("a boolean"),
+        DURATION("a duration"),
+        SIZE("a size");
+
+        final String description;
+
+        Type(String description) {
+            this.description = description;
+        }
+    }
+
+    /** Upper bound on cached names per type, so a caller probing random names cannot grow the cache forever. */
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Object version;
+    private final Map<Type,ConcurrentHashMap<String,ParsedValue>> values = new EnumMap<Type, ConcurrentHashMap<String,ParsedValue>>(Type.class);
+    private final ConcurrentHashMap<String,CachedTokens> tokens = new ConcurrentHashMap<String, CachedTokens>();
+
+    TypedValueCache(Object version) {
+        this.version = version;
+        for(Type type : Type.values()) {
+            this.values.put(type, new ConcurrentHashMap<String, ParsedValue>());
+        }
+    }
+
+    Object getVersion() {
+        return this.version;
+    }
+
+    ParsedValue get(String name, Type type) {
+        return this.values.get(type).get(name);
+    }
+
+    void put(String name, Type type, ParsedValue value) {
+        ConcurrentHashMap<String,ParsedValue> typeValues = this.values.get(type);
+        if(typeValues.size()<MAX_ENTRIES) {
+            typeValues.put(name, value);
+        }
+    }
+
+    /**
+     * @return The cached tokens of the property for the separator and trimming, or <code>null</code>.
+     */
+    List<String> getTokens(String name, String separator, boolean trim) {
+        for(CachedTokens cached = this.tokens.get(name); cached!=null; cached = cached.next) {
+            if(cached.trim==trim && cached.separator.equals(separator)) {
+                return cached.tokens;
+            }
+        }
+        return null;
+    }
+
+    void putTokens(String name, String separator, boolean trim, List<String> tokens) {
+        if(this.tokens.size()<MAX_ENTRIES || this.tokens.containsKey(name)) {
+            this.tokens.merge(name, new CachedTokens(separator, trim, tokens, null), (existing, added) -> new CachedTokens(separator, trim, tokens, existing));
+        }
+    }
+
+    /**
+     * The tokens of one property for one separator; a property split several ways gets a short chain of these.
+     */
+    private static final class CachedTokens {
+        final String separator;
+        final boolean trim;
+        final List<String> tokens;
+        final CachedTokens next;
+
+        CachedTokens(String separator, boolean trim, List<String> tokens, CachedTokens next) {
+            this.separator = separator;
+            this.trim = trim;
+            this.tokens = tokens;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.servicecore.cfg;
+
+import java.time.Duration;
+
+/**
+ * Converts property values to numbers, durations and sizes without throwing.  A value which cannot be converted gives
+ * {@link ParsedValue#INVALID}, so a broken property costs no more to read than a good one.
+ * <p>Integers and longs accept what {@link Long#parseLong(String)} accepts.  Doubles and floats accept what
+ * {@link Double#valueOf(String)} accepts; short decimals are computed directly, anything else is checked first and then
+ * handed to the JDK, which then cannot fail.</p>
+ */
+final class ValueParser {
+
+    /** Exact powers of ten as doubles; 10^22 is the largest exact one. */
+    private static final double[] DOUBLE_POWERS = new double[23];
+
+    /** Exact powers of ten as floats; 10^10 is the largest one. */
+    private static final float[] FLOAT_POWERS = new float[11];
+
+    /** Integers up to 2^53 are exact doubles. */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    /** Integers up to 2^24 are exact floats. */
+    private static final long MAX_EXACT_FLOAT = 1L << 24;
+
+    private static final long KILOBYTE = 1024L;
+
+    /** Stands for a value which could not be parsed; {@link Long#MIN_VALUE} itself is parsed by the JDK instead. */
+    private static final long INVALID_LONG = Long.MIN_VALUE;
+
+    static {
+        double power = 1d;
+        for(int i=0; i<DOUBLE_POWERS.length; i++) {
+            DOUBLE_POWERS[i] = power;
+            power *= 10d;
+        }
+        float floatPower = 1f;
+        for(int i=0; i<FLOAT_POWERS.length; i++) {
+            FLOAT_POWERS[i] = floatPower;
+            floatPower *= 10f;
+        }
+    }
+
+    private ValueParser() {
+    }
+
+    static ParsedValue parseInteger(String value) {
+        long parsed = parseLong(value, 0, value.length(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return (parsed==INVALID_LONG ? invalidOrSlow(value, TypedValueCache.Type.INTEGER) : ParsedValue.of((int)parsed));
+    }
+
+    static ParsedValue parseLong(String value) {
+        long parsed = parseLong(value, 0, value.length(), Long.MIN_VALUE, Long.MAX_VALUE);
+        return (parsed==INVALID_LONG ? invalidOrSlow(value, TypedValueCache.Type.LONG) : ParsedValue.of(parsed));
+    }
+
+    /**
+     * Parses an optionally signed decimal number in the range, like {@link Long#parseLong(String)}.
+     * @return The number, or {@link #INVALID_LONG}.
+     */
+    private static long parseLong(String value, int from, int to, long min, long max) {
+        if(from>=to) {
+            return INVALID_LONG;
+        }
+        boolean negative = false;
+        char first = value.charAt(from);
+        if(first=='-' || first=='+') {
+            negative = (first=='-');
+            if(++from==to) {
+                return INVALID_LONG;
+            }
+        }
+        // Accumulate negatively, so the most negative value fits.
+        long limit = (negative ? min : -max);
+        long multiplyLimit = limit/10;
+        long result = 0;
+        for(int i=from; i<to; i++) {
+            int digit = value.charAt(i)-'0';
+            if(digit<0 || digit>9 || result<multiplyLimit || result*10<limit+digit) {
+                return INVALID_LONG;
+            }
+            result = result*10-digit;
+        }
+        return (negative ? result : -result);
+    }
+
+    /**
+     * Left to the JDK: values with non-ASCII digits, and {@link Long#MIN_VALUE}.  Only these values can throw there.
+     */
+    private static ParsedValue invalidOrSlow(String value, TypedValueCache.Type type) {
+        if(!needsSlowPath(value)) {
+            return ParsedValue.INVALID;
+        }
+        try {
+            return (type==TypedValueCache.Type.INTEGER ? ParsedValue.of(Integer.valueOf(value)) : ParsedValue.of(Long.valueOf(value)));
+        } catch(NumberFormatException nfEx) {
+            return ParsedValue.INVALID;
+        }
+    }
+
+    private static boolean needsSlowPath(String value) {
+        for(int i=0; i<value.length(); i++) {
+            if(value.charAt(i)>=0x80) {
+                return true;
+            }
+        }
+        return value.equals("-9223372036854775808");
+    }
+
+    static ParsedValue parseDouble(String value) {
+        int from = trimStart(value);
+        int to = trimEnd(value, from);
+        long exact = parseShortDecimal(value, from, to, MAX_EXACT_DOUBLE, DOUBLE_POWERS.length-1);
+        if(exact!=INVALID_LONG) {
+            double result = (double)(exact >> 8)/DOUBLE_POWERS[(int)(exact & 0xff)];
+            return ParsedValue.of(negative(value, from) ? -result : result);
+        }
+        return (isFloatingPoint(value, from, to) ? ParsedValue.of(Double.valueOf(value)) : ParsedValue.INVALID);
+    }
+
+    static ParsedValue parseFloat(String value) {
+        int from = trimStart(value);
+        int to = trimEnd(value, from);
+        long exact = parseShortDecimal(value, from, to, MAX_EXACT_FLOAT, FLOAT_POWERS.length-1);
+        if(exact!=INVALID_LONG) {
+            float result = (float)(exact >> 8)/FLOAT_POWERS[(int)(exact & 0xff)];
+            return ParsedValue.of(negative(value, from) ? -result : result);
+        }
+        return (isFloatingPoint(value, from, to) ? ParsedValue.of(Float.valueOf(value)) : ParsedValue.INVALID);
+    }
+
+    private static boolean negative(String value, int from) {
+        return value.charAt(from)=='-';
+    }
+
+    /**
+     * Reads a plain decimal such as <code>-12.75</code> whose digits and number of decimals are small enough that one
+     * division of exact values gives the correctly rounded result.
+     * @return The digits as an integer shifted left by 8 bits, with the number of decimals in the low byte, or
+     *         {@link #INVALID_LONG} if the value is not such a decimal.
+     */
+    private static long parseShortDecimal(String value, int from, int to, long maxMantissa, int maxPower) {
+        int i = from;
+        if(i<to && (value.charAt(i)=='-' || value.charAt(i)=='+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = 0;
+        int digits = 0;
+        boolean point = false;
+        for(; i<to; i++) {
+            char c = value.charAt(i);
+            if(c=='.' && !point) {
+                point = true;
+                continue;
+            }
+            if(c<'0' || c>'9') {
+                return INVALID_LONG;
+            }
+            mantissa = mantissa*10+(c-'0');
+            if(mantissa>maxMantissa) {
+                return INVALID_LONG;
+            }
+            digits++;
+            decimals += (point ? 1 : 0);
+        }
+        if(digits==0 || decimals>maxPower) {
+            return INVALID_LONG;
+        }
+        return (mantissa << 8) | decimals;
+    }
+
+    /**
+     * @return <code>true</code> if {@link Double#valueOf(String)} accepts the trimmed value.
+     */
+    private static boolean isFloatingPoint(String value, int from, int to) {
+        int i = from;
+        if(i<to && (value.charAt(i)=='-' || value.charAt(i)=='+')) {
+            i++;
+        }
+        if(value.startsWith("NaN", i) || value.startsWith("Infinity", i)) {
+            return i+(value.charAt(i)=='N' ? 3 : 8)==to;
+        }
+        if(to-i>2 && value.charAt(i)=='0' && (value.charAt(i+1)=='x' || value.charAt(i+1)=='X')) {
+            return isHexFloatingPoint(value, i+2, to);
+        }
+        int digits = 0;
+        for(; i<to && isDigit(value.charAt(i)); i++) {
+            digits++;
+        }
+        if(i<to && value.charAt(i)=='.') {
+            for(i++; i<to && isDigit(value.charAt(i)); i++) {
+                digits++;
+            }
+        }
+        if(digits==0) {
+            return false;
+        }
+        if(i<to && (value.charAt(i)=='e' || value.charAt(i)=='E')) {
+            i = skipExponent(value, i+1, to);
+            if(i<0) {
+                return false;
+            }
+        }
+        return isEndOrTypeSuffix(value, i, to);
+    }
+
+    private static boolean isHexFloatingPoint(String value, int from, int to) {
+        int i = from;
+        int digits = 0;
+        for(; i<to && Character.digit(value.charAt(i), 16)>=0 && value.charAt(i)<0x80; i++) {
+            digits++;
+        }
+        if(i<to && value.charAt(i)=='.') {
+            for(i++; i<to && Character.digit(value.charAt(i), 16)>=0 && value.charAt(i)<0x80; i++) {
+                digits++;
+            }
+        }
+        if(digits==0 || i>=to || (value.charAt(i)!='p' && value.charAt(i)!='P')) {
+            return false;
+        }
+        i = skipExponent(value, i+1, to);
+        return i>=0 && isEndOrTypeSuffix(value, i, to);
+    }
+
+    /**
+     * @return The index after the signed exponent digits, or -1 if there are none.
+     */
+    private static int skipExponent(String value, int from, int to) {
+        int i = from;
+        if(i<to && (value.charAt(i)=='-' || value.charAt(i)=='+')) {
+            i++;
+        }
+        int start = i;
+        while(i<to && isDigit(value.charAt(i))) {
+            i++;
+        }
+        return (i==start ? -1 : i);
+    }
+
+    private static boolean isEndOrTypeSuffix(String value, int i, int to) {
+        if(i==to) {
+            return true;
+        }
+        char c = value.charAt(i);
+        return i+1==to && (c=='f' || c=='F' || c=='d' || c=='D');
+    }
+
+    private static boolean isDigit(char c) {
+        return c>='0' && c<='9';
+    }
+
+    /** Like {@link String#trim()}, which {@link Double#valueOf(String)} applies first. */
+    private static int trimStart(String value) {
+        int from = 0;
+        while(from<value.length() && value.charAt(from)<=' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(String value, int from) {
+        int to = value.length();
+        while(to>from && value.charAt(to-1)<=' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Parses a duration such as <code>30s</code> or <code>500ms</code>: a whole number, optionally signed, followed by one
+     * of the units <code>ns</code>, <code>us</code>, <code>ms</code>, <code>s</code>, <code>m</code>, <code>h</code> or
+     * <code>d</code>.  A number without a unit is in milliseconds.  White space around the value is ignored, and so is
+     * the case of the unit.
+     */
+    static ParsedValue parseDuration(String value) {
+        int from = trimStart(value);
+        int to = trimEnd(value, from);
+        int unitStart = unitStart(value, from, to);
+        long nanosPerUnit = durationUnit(value, unitStart, to);
+        if(nanosPerUnit<0) {
+            return ParsedValue.INVALID;
+        }
+        long amount = parseLong(value, from, numberEnd(value, from, unitStart), -Long.MAX_VALUE/nanosPerUnit, Long.MAX_VALUE/nanosPerUnit);
+        return (amount==INVALID_LONG ? ParsedValue.INVALID : ParsedValue.of(Duration.ofNanos(amount*nanosPerUnit)));
+    }
+
+    private static long durationUnit(String value, int from, int to) {
+        switch(to-from) {
+            case 0:
+                return 1000000L;
+            case 1:
+                switch(Character.toLowerCase(value.charAt(from))) {
+                    case 's':
+                        return 1000000000L;
+                    case 'm':
+                        return 60000000000L;
+                    case 'h':
+                        return 3600000000000L;
+                    case 'd':
+                        return 86400000000000L;
+                    default:
+                        return -1L;
+                }
+            case 2:
+                if(Character.toLowerCase(value.charAt(from+1))!='s') {
+                    return -1L;
+                }
+                switch(Character.toLowerCase(value.charAt(from))) {
+                    case 'n':
+                        return 1L;
+                    case 'u':
+                        return 1000L;
+                    case 'm':
+                        return 1000000L;
+                    default:
+                        return -1L;
+                }
+            default:
+                return -1L;
+        }
+    }
+
+    /**
+     * Parses a size in bytes such as <code>64MB</code>: a whole, non-negative number followed by one of the units
+     * <code>B</code>, <code>KB</code>, <code>MB</code>, <code>GB</code> or <code>TB</code>, which are powers of 1024.  A
+     * number without a unit is in bytes.  White space around the value is ignored, and so is the case of the unit.
+     */
+    static ParsedValue parseSize(String value) {
+        int from = trimStart(value);
+        int to = trimEnd(value, from);
+        int unitStart = unitStart(value, from, to);
+        long bytesPerUnit = sizeUnit(value, unitStart, to);
+        if(bytesPerUnit<0) {
+            return ParsedValue.INVALID;
+        }
+        long amount = parseLong(value, from, numberEnd(value, from, unitStart), 0L, Long.MAX_VALUE/bytesPerUnit);
+        return (amount==INVALID_LONG ? ParsedValue.INVALID : ParsedValue.of(amount*bytesPerUnit));
+    }
+
+    private static long sizeUnit(String value, int from, int to) {
+        if(to==from) {
+            return 1L;
+        }
+        if(Character.toLowerCase(value.charAt(to-1))!='b' || to-from>2) {
+            return -1L;
+        }
+        if(to-from==1) {
+            return 1L;
+        }
+        switch(Character.toLowerCase(value.charAt(from))) {
+            case 'k':
+                return KILOBYTE;
+            case 'm':
+                return KILOBYTE*KILOBYTE;
+            case 'g':
+                return KILOBYTE*KILOBYTE*KILOBYTE;
+            case 't':
+                return KILOBYTE*KILOBYTE*KILOBYTE*KILOBYTE;
+            default:
+                return -1L;
+        }
+    }
+
+    /**
+     * @return The index of the first letter after the number, or the end.
+     */
+    private static int unitStart(String value, int from, int to) {
+        int i = to;
+        while(i>from && Character.isLetter(value.charAt(i-1))) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * @return The end of the number before the unit, which may be separated from it by white space.
+     */
+    private static int numberEnd(String value, int from, int unitStart) {
+        int i = unitStart;
+        while(i>from && value.charAt(i-1)<=' ') {
+            i--;
+        }
+        return i;
+    }
+}
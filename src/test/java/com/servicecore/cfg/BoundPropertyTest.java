@@ -0,0 +1,51 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundPropertyTest {
+
+    @Test
+    public void handlesFollowTheGroup() {
+        ServiceConfigurationGroup group = new ServiceConfigurationGroup("svc", properties("port", "80", "debug", "true", "name", "a"));
+        IntProperty port = group.intProperty("port", -1);
+        BooleanProperty debug = group.booleanProperty("debug", false);
+        StringProperty name = group.stringProperty("name", null);
+        assertEquals(80, port.get());
+        assertTrue(debug.get());
+        group.add("port", "broken");
+        group.add("name", "b");
+        assertEquals(-1, port.get());
+        assertEquals("b", name.get());
+    }
+
+    @Test
+    public void equalBindingsShareAHandle() {
+        ServiceConfigurationGroup group = new ServiceConfigurationGroup("svc", properties("x", "1"));
+        assertSame(group.intProperty("x", 1), group.intProperty("x", 1));
+        assertNotSame(group.intProperty("x", 1), group.longProperty("x", 1));
+        assertNotSame(group.stringProperty("x", null), group.stringProperty("x", "null"));
+        assertNotSame(group.stringProperty("a", "b=c"), group.stringProperty("a=b", "c"));
+    }
+
+    @Test
+    public void updatesAreNotCountedAsReads() {
+        ServiceConfigurationGroup group = new ServiceConfigurationGroup("svc", properties("port", "80", "name", "a"));
+        ConfigurationMetrics metrics = new ConfigurationMetrics(1);
+        group.setMetrics(metrics);
+        IntProperty port = group.intProperty("port", -1);
+        group.stringProperty("name", null);
+        group.add("port", "81");
+        group.add("other", "x");
+        assertEquals(81, port.get());
+        assertEquals(0, metrics.getReads());
+        group.getInt("port", 0);
+        assertEquals(1, metrics.getReads());
+        assertEquals(properties("svc.port", null).keySet(), metrics.getHotKeys(10).keySet());
+    }
+}
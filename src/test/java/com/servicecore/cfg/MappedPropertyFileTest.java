@@ -0,0 +1,109 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedPropertyFileTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("properties", ".snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Test
+    public void roundTripsEveryProperty() throws IOException {
+        Map<String,String> properties = new HashMap<String, String>();
+        for(int i=0; i<3000; i++) {
+            properties.put("svc."+(i%7)+".key"+i, "value "+i);
+        }
+        properties.put("caf\u00e9.cr\u00e8me", "br\u00fbl\u00e9e");
+        properties.put("emoji.\ud83d\ude00", "\u4e2d\u6587");
+        properties.put("empty", "");
+        properties.put("nothing", null);
+        MappedPropertyFile.write(properties, this.file);
+        MappedPropertyFile.View view = MappedPropertyFile.open(this.file);
+        assertEquals(properties.size(), view.size());
+        assertEquals(properties, new HashMap<String, String>(view));
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            assertEquals(entry.getValue(), view.get(entry.getKey()));
+            assertTrue(view.containsKey(entry.getKey()));
+        }
+        assertTrue(view.containsKey("nothing"));
+        assertFalse(view.containsKey("svc"));
+        assertNull(view.get("svc.0.key1"));
+        assertEquals(properties.keySet(), view.keySet());
+    }
+
+    @Test
+    public void viewsCoverThePrefixes() throws IOException {
+        MappedPropertyFile.write(properties("db.host", "h", "db.pool.size", "5", "db.pool.min", "1", "dbx", "x", "other.a", "o"), this.file);
+        MappedPropertyFile.View view = MappedPropertyFile.open(this.file);
+        assertEquals(properties("host", "h", "pool.size", "5", "pool.min", "1"), new HashMap<String, String>(view.prefixView("db.")));
+        assertEquals(Arrays.asList("db", "other"), new ArrayList<String>(view.breakDown("").keySet()));
+        assertEquals(properties("size", "5", "min", "1"), new HashMap<String, String>(view.breakDown("db.").get("pool")));
+        assertTrue(view.prefixView("none.").isEmpty());
+    }
+
+    @Test
+    public void keyFilterHoldsEveryKey() throws IOException {
+        Map<String,String> properties = properties("a", "1", "caf\u00e9", "2", "emoji.\ud83d\ude00", "3", "b.c", "4");
+        MappedPropertyFile.write(properties, this.file);
+        MembershipFilter filter = MappedPropertyFile.open(this.file).keyFilter();
+        for(String key : properties.keySet()) {
+            assertTrue(key, filter.mightContain(key));
+        }
+    }
+
+    @Test
+    public void offHeapMatchesTheFile() throws IOException {
+        Map<String,String> properties = properties("a.b", "1", "a.c", "2", "d", null, "\u00e9t\u00e9", "3");
+        MappedPropertyFile.write(properties, this.file);
+        MappedPropertyFile.View mapped = MappedPropertyFile.open(this.file);
+        MappedPropertyFile.View offHeap = MappedPropertyFile.offHeap(properties);
+        assertEquals(new HashMap<String, String>(mapped), new HashMap<String, String>(offHeap));
+        assertEquals("2", offHeap.prefixView("a.").get("c"));
+        assertTrue(offHeap.containsKey("d"));
+    }
+
+    @Test
+    public void rewritingReplacesTheFile() throws IOException {
+        MappedPropertyFile.write(properties("a", "1"), this.file);
+        MappedPropertyFile.View before = MappedPropertyFile.open(this.file);
+        MappedPropertyFile.write(properties("a", "2", "b", "3"), this.file);
+        assertEquals("1", before.get("a"));
+        assertEquals(properties("a", "2", "b", "3"), new HashMap<String, String>(MappedPropertyFile.open(this.file)));
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(this.file, "not a snapshot file".getBytes("UTF-8"));
+        try {
+            MappedPropertyFile.open(this.file);
+            fail("opened a file which is not a snapshot");
+        } catch(IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class OverlayMapTest {
+
+    private PrefixIndexedMap base = PropertyIndex.build(properties(
+            "svc.host", "h",
+            "svc.port", "1",
+            "svc.a.x", "1",
+            "svc.b.x", "2",
+            "svc.b.y", "3",
+            "other", "o"));
+
+    @Test
+    public void overridesAddAndReplaceBaseEntries() {
+        OverlayMap overlay = new OverlayMap(() -> this.base, "svc.", properties("port", "2", "user", "u"));
+        assertEquals("h", overlay.get("host"));
+        assertEquals("2", overlay.get("port"));
+        assertEquals("u", overlay.get("user"));
+        assertNull(overlay.get("other"));
+        assertEquals(6, overlay.size());
+        assertEquals(properties("host", "h", "port", "2", "user", "u", "a.x", "1", "b.x", "2", "b.y", "3"), new HashMap<String, String>(overlay));
+    }
+
+    @Test
+    public void nullOverridesRemoveBaseEntries() {
+        OverlayMap overlay = new OverlayMap(() -> this.base, "svc.", properties("host", null, "missing", null, "b.x", null));
+        assertNull(overlay.get("host"));
+        assertFalse(overlay.containsKey("host"));
+        assertFalse(overlay.containsKey("missing"));
+        assertTrue(overlay.containsKey("port"));
+        assertEquals(3, overlay.size());
+        assertEquals(properties("port", "1", "a.x", "1", "b.y", "3"), new HashMap<String, String>(overlay));
+        assertEquals(overlay.size(), overlay.entrySet().size());
+    }
+
+    @Test
+    public void breakDownMergesBaseAndOverrideSegments() {
+        OverlayMap overlay = new OverlayMap(() -> this.base, "svc.", properties("c.x", "4", "b.x", "20", "a.x", null));
+        Map<String,PrefixIndexedMap> children = overlay.breakDown("");
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(children.keySet()));
+        assertEquals(properties("x", "20", "y", "3"), new HashMap<String, String>(children.get("b")));
+        assertEquals(properties("x", "4"), new HashMap<String, String>(children.get("c")));
+        assertEquals(properties("x", "20", "y", "3"), new HashMap<String, String>(overlay.prefixView("b.")));
+    }
+
+    @Test
+    public void followsTheBase() {
+        OverlayMap overlay = new OverlayMap(() -> this.base, "", properties("other", "mine"));
+        Object version = overlay.getVersion();
+        assertSame(version, overlay.getVersion());
+        assertEquals(6, overlay.size());
+        this.base = PropertyIndex.build(properties("other", "o", "svc.host", "h2"));
+        assertNotSame(version, overlay.getVersion());
+        assertEquals("h2", overlay.get("svc.host"));
+        assertEquals("mine", overlay.get("other"));
+        assertEquals(2, overlay.size());
+    }
+
+    @Test
+    public void withStacksOverrides() {
+        OverlayMap overlay = new OverlayMap(() -> this.base, "svc.", properties("port", "2", "host", null)).with(properties("port", "3", "host", "h3"));
+        assertEquals("3", overlay.get("port"));
+        assertEquals("h3", overlay.get("host"));
+        assertEquals(5, overlay.size());
+    }
+}
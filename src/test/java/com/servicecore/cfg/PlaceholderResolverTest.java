@@ -0,0 +1,119 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class PlaceholderResolverTest {
+
+    @Test
+    public void resolvesNestedPlaceholders() {
+        Map<String,String> resolved = resolve(properties(
+                "env", "prod",
+                "db.prod.host", "db1",
+                "db.host", "${db.${env}.host}",
+                "db.url", "jdbc://${db.host}:${db.port:5432}/${db.name}",
+                "db.name", "main",
+                "plain", "no placeholders"));
+        assertEquals("db1", resolved.get("db.host"));
+        assertEquals("jdbc://db1:5432/main", resolved.get("db.url"));
+        assertEquals("no placeholders", resolved.get("plain"));
+    }
+
+    @Test
+    public void fallsBackToDefaults() {
+        Map<String,String> resolved = resolve(properties(
+                "a", "${missing:fallback}",
+                "b", "${missing:${a}}",
+                "c", "${missing:}",
+                "d", "${present:unused}",
+                "present", "used",
+                "e", "${missing}"));
+        assertEquals("fallback", resolved.get("a"));
+        assertEquals("fallback", resolved.get("b"));
+        assertEquals("", resolved.get("c"));
+        assertEquals("used", resolved.get("d"));
+        assertEquals("${missing}", resolved.get("e"));
+    }
+
+    @Test
+    public void asksTheFallbackForOtherNames() {
+        Map<String,String> properties = properties("a", "${external}-${absent:none}");
+        PlaceholderResolver.Resolution resolution = PlaceholderResolver.resolve(properties, name -> ("external".equals(name) ? "x" : null), null, null);
+        assertEquals("x-none", properties.get("a"));
+        assertTrue(resolution.external.contains("a"));
+    }
+
+    @Test
+    public void leavesCyclesUnresolved() {
+        Map<String,String> resolved = resolve(properties(
+                "self", "${self}",
+                "a", "${b}",
+                "b", "${a}",
+                "c", "x${a}"));
+        assertEquals("${self}", resolved.get("self"));
+        assertTrue(resolved.get("a").contains("${"));
+        assertTrue(resolved.get("b").contains("${"));
+        assertTrue(resolved.get("c").startsWith("x${"));
+    }
+
+    @Test
+    public void reResolvesOnlyWhatChanged() {
+        Map<String,String> first = properties(
+                "host", "h1",
+                "port", "1",
+                "url", "${host}:${port}",
+                "name", "svc",
+                "title", "${name}!",
+                "nested", "[${url}]");
+        Map<String,String> firstResolved = new HashMap<String, String>(first);
+        PlaceholderResolver.Resolution resolution = PlaceholderResolver.resolve(firstResolved, null, null, null);
+
+        Map<String,String> second = new HashMap<String, String>(first);
+        second.put("port", "2");
+        Map<String,String> secondResolved = new HashMap<String, String>(second);
+        PlaceholderResolver.Resolution next = PlaceholderResolver.resolve(secondResolved, null, resolution, firstResolved);
+
+        assertEquals(resolve(second), secondResolved);
+        assertEquals("[h1:2]", secondResolved.get("nested"));
+        assertSame(firstResolved.get("title"), secondResolved.get("title"));
+        assertNotSame(firstResolved.get("url"), secondResolved.get("url"));
+
+        Map<String,String> third = new HashMap<String, String>(second);
+        third.put("title", "${name}?");
+        third.remove("host");
+        Map<String,String> thirdResolved = new HashMap<String, String>(third);
+        PlaceholderResolver.resolve(thirdResolved, null, next, secondResolved);
+        assertEquals(resolve(third), thirdResolved);
+        assertEquals("svc?", thirdResolved.get("title"));
+        assertEquals("[${host}:2]", thirdResolved.get("nested"));
+    }
+
+    @Test
+    public void reResolvesExternalLookupsEveryTime() {
+        String[] external = {"x"};
+        Function<String,String> fallback = name -> ("ext".equals(name) ? external[0] : null);
+        Map<String,String> first = properties("a", "${ext}", "b", "${c}", "c", "1");
+        Map<String,String> firstResolved = new HashMap<String, String>(first);
+        PlaceholderResolver.Resolution resolution = PlaceholderResolver.resolve(firstResolved, fallback, null, null);
+        external[0] = "y";
+        Map<String,String> secondResolved = new HashMap<String, String>(first);
+        PlaceholderResolver.resolve(secondResolved, fallback, resolution, firstResolved);
+        assertEquals("y", secondResolved.get("a"));
+        assertSame(firstResolved.get("b"), secondResolved.get("b"));
+    }
+
+    private static Map<String,String> resolve(Map<String,String> raw) {
+        Map<String,String> properties = new HashMap<String, String>(raw);
+        PlaceholderResolver.resolve(properties, null, null, null);
+        return properties;
+    }
+}
@@ -0,0 +1,99 @@
+package com.servicecore.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class PropertyIndexTest {
+
+    @Test
+    public void looksUpEveryKey() {
+        Map<String,String> properties = properties("a", "1", "a.b", "2", "a.b.c", "3", "ab", "4", "b", null);
+        PropertyIndex.RangeView view = PropertyIndex.build(properties);
+        assertEquals(properties, new HashMap<String, String>(view));
+        assertEquals(properties.size(), view.size());
+        assertTrue(view.containsKey("b"));
+        assertNull(view.get("b"));
+        assertFalse(view.containsKey("c"));
+        assertNull(view.get(42));
+    }
+
+    @Test
+    public void prefixViewHoldsTheKeysBelowThePrefix() {
+        PropertyIndex.RangeView view = PropertyIndex.build(properties("db.host", "h", "db.port", "1", "db.pool.size", "5", "dbx.y", "2", "d", "3"));
+        PropertyIndex.RangeView db = view.prefixView("db.");
+        assertEquals(properties("host", "h", "port", "1", "pool.size", "5"), new HashMap<String, String>(db));
+        assertEquals("5", db.get("pool.size"));
+        assertFalse(db.containsKey("db.host"));
+        assertEquals(properties("size", "5"), new HashMap<String, String>(db.prefixView("pool.")));
+        assertTrue(view.prefixView("nothing.").isEmpty());
+        assertEquals(0, db.prefixView("host.").size());
+    }
+
+    @Test
+    public void breakDownSplitsOnTheNextSegment() {
+        PropertyIndex.RangeView view = PropertyIndex.build(properties("svc.a.x", "1", "svc.a.y.z", "2", "svc.b.x", "3", "svc.c", "4", "other.d.x", "5"));
+        Map<String,PrefixIndexedMap> children = view.breakDown("svc.");
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(children.keySet()));
+        assertEquals(properties("x", "1", "y.z", "2"), new HashMap<String, String>(children.get("a")));
+        assertEquals(properties("x", "3"), new HashMap<String, String>(children.get("b")));
+        assertEquals(Collections.singleton("y"), view.prefixView("svc.a.").breakDown("").keySet());
+        assertEquals(Arrays.asList("other", "svc"), new ArrayList<String>(view.breakDown("").keySet()));
+        assertTrue(view.breakDown("none.").isEmpty());
+    }
+
+    @Test
+    public void changedKeysFindsAddedRemovedAndChangedKeys() {
+        Map<String,String> previous = properties("a", "1", "b", "2", "c", "3", "d", null, "e", null);
+        Map<String,String> current = properties("b", "2", "c", "30", "d", null, "e", "5", "f", "6");
+        List<String> changed = PropertyIndex.changedKeys(PropertyIndex.build(previous).getIndex(), PropertyIndex.build(current).getIndex());
+        assertEquals(Arrays.asList("a", "c", "e", "f"), changed);
+    }
+
+    @Test
+    public void changedKeysMatchesAComparisonOfTheMaps() {
+        Random random = new Random(7);
+        for(int round=0; round<200; round++) {
+            Map<String,String> previous = randomProperties(random);
+            Map<String,String> current = randomProperties(random);
+            List<String> expected = new ArrayList<String>();
+            TreeMap<String,String> all = new TreeMap<String, String>(previous);
+            all.putAll(current);
+            for(String key : all.keySet()) {
+                if(previous.containsKey(key)!=current.containsKey(key) || !String.valueOf(previous.get(key)).equals(String.valueOf(current.get(key)))) {
+                    expected.add(key);
+                }
+            }
+            assertEquals(expected, PropertyIndex.changedKeys(PropertyIndex.build(previous).getIndex(), PropertyIndex.build(current).getIndex()));
+        }
+    }
+
+    private static Map<String,String> randomProperties(Random random) {
+        Map<String,String> properties = new HashMap<String, String>();
+        int size = random.nextInt(30);
+        for(int i=0; i<size; i++) {
+            properties.put("k."+random.nextInt(5)+"."+random.nextInt(5), Integer.toString(random.nextInt(3)));
+        }
+        return properties;
+    }
+
+    static Map<String,String> properties(String... keysAndValues) {
+        Map<String,String> properties = new HashMap<String, String>();
+        for(int i=0; i<keysAndValues.length; i+=2) {
+            properties.put(keysAndValues[i], keysAndValues[i+1]);
+        }
+        return properties;
+    }
+}
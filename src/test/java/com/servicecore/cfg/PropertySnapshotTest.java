@@ -0,0 +1,144 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.env.SystemEnvironmentPropertySource;
+
+public class PropertySnapshotTest {
+
+    private StandardEnvironment env;
+    private Map<String,Object> systemEnv;
+    private Map<String,Object> unlisted;
+
+    @Before
+    public void setUp() {
+        this.env = new StandardEnvironment();
+        this.systemEnv = new HashMap<String, Object>();
+        this.systemEnv.put("DB_HOST", "envhost");
+        this.systemEnv.put("APP_NAME", "envapp");
+        this.unlisted = new HashMap<String, Object>();
+        this.unlisted.put("not.enumerated", "hidden");
+        this.env.getPropertySources().addFirst(new MapPropertySource("unlisted", this.unlisted));
+        this.env.getPropertySources().addFirst(new SystemEnvironmentPropertySource("testEnv", this.systemEnv));
+    }
+
+    @Test
+    public void findsEveryHeldName() {
+        Map<String,String> properties = new HashMap<String, String>();
+        for(int i=0; i<5000; i++) {
+            properties.put("k."+i, Integer.toString(i));
+        }
+        PropertySnapshot snapshot = new PropertySnapshot(properties, this.env, true);
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+            assertTrue(snapshot.containsKey(entry.getKey()));
+        }
+        assertNull(snapshot.get("k.5000"));
+        assertFalse(snapshot.containsKey("k.-1"));
+    }
+
+    @Test
+    public void completeSnapshotsNeverAskTheEnvironment() {
+        PropertySnapshot snapshot = new PropertySnapshot(properties("a", "1"), this.env, true);
+        assertNull(snapshot.get("db.host"));
+        assertNull(snapshot.get("not.enumerated"));
+    }
+
+    @Test
+    public void relaxedNamesFallBackToTheEnvironment() {
+        PropertySnapshot snapshot = this.incompleteSnapshot();
+        assertEquals("1", snapshot.get("a"));
+        assertEquals("envhost", snapshot.get("db.host"));
+        assertEquals("envhost", snapshot.get("db-host"));
+        assertEquals("envapp", snapshot.get("app.name"));
+        assertTrue(snapshot.containsKey("APP_NAME"));
+        assertNull(snapshot.get("db.port"));
+    }
+
+    @Test
+    public void namesNoSourceHoldsAreRuledOut() {
+        PropertySnapshot snapshot = this.incompleteSnapshot();
+        assertNull(snapshot.get("not.enumerated"));
+        assertFalse(snapshot.containsKey("not.enumerated"));
+    }
+
+    @Test
+    public void withoutRelaxedNamesEveryMissAsksTheEnvironment() {
+        PropertySnapshot snapshot = new PropertySnapshot(PropertyIndex.build(properties("a", "1")), this.env, false, null);
+        assertEquals("hidden", snapshot.get("not.enumerated"));
+        assertEquals("envhost", snapshot.get("db.host"));
+    }
+
+    @Test
+    public void environmentAnswersAreKeptForTheSnapshot() {
+        PropertySnapshot snapshot = this.incompleteSnapshot();
+        assertEquals("envhost", snapshot.get("db.host"));
+        this.systemEnv.put("DB_HOST", "changed");
+        assertEquals("envhost", snapshot.get("db.host"));
+        assertEquals("changed", this.incompleteSnapshot().get("db.host"));
+    }
+
+    @Test
+    public void changedKeysComparesTheMaps() {
+        PropertySnapshot previous = new PropertySnapshot(properties("a", "1", "b", "2", "c", "3"), this.env, true);
+        PropertySnapshot current = new PropertySnapshot(properties("b", "2", "c", "30", "d", "4"), this.env, true);
+        assertEquals(Arrays.asList("a", "c", "d"), current.changedKeys(previous));
+    }
+
+    @Test
+    public void changedKeysOfMappedSnapshotsMatchesAComparisonOfTheMaps() throws IOException {
+        Random random = new Random(11);
+        Path file = Files.createTempFile("properties", ".snapshot");
+        try {
+            for(int round=0; round<100; round++) {
+                Map<String,String> previous = randomProperties(random);
+                Map<String,String> current = randomProperties(random);
+                List<String> expected = new PropertySnapshot(current, this.env, true).changedKeys(new PropertySnapshot(previous, this.env, true));
+                MappedPropertyFile.write(previous, file);
+                PropertySnapshot mapped = new PropertySnapshot(MappedPropertyFile.open(file), this.env, true, null);
+                PropertySnapshot heap = new PropertySnapshot(current, this.env, true);
+                PropertySnapshot offHeap = new PropertySnapshot(MappedPropertyFile.offHeap(current), this.env, true, null);
+                assertEquals(expected, heap.changedKeys(mapped));
+                assertEquals(expected, offHeap.changedKeys(mapped));
+                MappedPropertyFile.write(current, file);
+                PropertySnapshot mappedCurrent = new PropertySnapshot(MappedPropertyFile.open(file), this.env, true, null);
+                assertEquals(expected, mappedCurrent.changedKeys(new PropertySnapshot(previous, this.env, true)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Map<String,String> randomProperties(Random random) {
+        Map<String,String> properties = new HashMap<String, String>();
+        int size = random.nextInt(40);
+        for(int i=0; i<size; i++) {
+            int value = random.nextInt(4);
+            properties.put("k."+random.nextInt(6)+(random.nextInt(8)==0 ? "\u00e9" : "")+"."+random.nextInt(6), (value==0 ? null : value==1 ? "" : "v\u4e2d"+value));
+        }
+        return properties;
+    }
+
+    private PropertySnapshot incompleteSnapshot() {
+        PropertySourceFlattener.RelaxedNames relaxedNames = PropertySourceFlattener.RelaxedNames.of(Collections.singletonList(this.systemEnv.keySet().toArray(new String[0])));
+        return new PropertySnapshot(PropertyIndex.build(properties("a", "1")), this.env, false, relaxedNames);
+    }
+}
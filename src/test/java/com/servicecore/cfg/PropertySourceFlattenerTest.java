@@ -0,0 +1,80 @@
+package com.servicecore.cfg;
+
+import static com.servicecore.cfg.PropertyIndexTest.properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+
+public class PropertySourceFlattenerTest {
+
+    @Test
+    public void firstSourceWins() {
+        PropertySourceFlattener.Result result = new PropertySourceFlattener(ForkJoinPool.commonPool(), 4096).flatten(sources(
+                new MapPropertySource("first", objects("a", "1", "b", "2")),
+                new ArgsPropertySource("second", "b", "20", "c", "30")));
+        assertEquals(properties("a", "1", "b", "2", "c", "30"), result.properties);
+        assertTrue(result.complete);
+    }
+
+    @Test
+    public void smallEnvironmentsAreReadOnTheCallingThread() {
+        CountingPool pool = new CountingPool();
+        List<PropertySource<?>> sources = sources(new ArgsPropertySource("args", "a", "1", "b", "2"), new MapPropertySource("map", objects("c", "3")));
+        assertEquals(3, new PropertySourceFlattener(pool, 4).flatten(sources).properties.size());
+        assertEquals(0, pool.submitted.get());
+        assertEquals(properties("a", "1", "b", "2", "c", "3"), new PropertySourceFlattener(pool, 3).flatten(sources).properties);
+        assertEquals(2, pool.submitted.get());
+        pool.shutdown();
+    }
+
+    private static List<PropertySource<?>> sources(PropertySource<?>... sources) {
+        return new ArrayList<PropertySource<?>>(Arrays.asList(sources));
+    }
+
+    private static Map<String,Object> objects(String... keysAndValues) {
+        return new HashMap<String, Object>(properties(keysAndValues));
+    }
+
+    /**
+     * An enumerable source which is not a map source, like command line arguments or servlet parameters.
+     */
+    private static final class ArgsPropertySource extends EnumerablePropertySource<Map<String,String>> {
+
+        ArgsPropertySource(String name, String... keysAndValues) {
+            super(name, properties(keysAndValues));
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return this.source.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return this.source.get(name);
+        }
+    }
+
+    private static final class CountingPool extends ForkJoinPool {
+        final AtomicInteger submitted = new AtomicInteger();
+
+        @Override
+        public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+            this.submitted.incrementAndGet();
+            return super.submit(task);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.servicecore.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.time.Duration;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ValueParserTest {
+
+    private static final String[] LONG_EDGE_CASES = {
+        "0", "-0", "+0", "7", "-7", "+7", "007", "", "-", "+", "+-1", "--1", " 1", "1 ", "1.0", "1e3", "0x10", "12a",
+        "2147483647", "2147483648", "-2147483648", "-2147483649",
+        "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+        "99999999999999999999", "\u0661\u0662", "-\u0661", "\uff11"
+    };
+
+    private static final String[] DOUBLE_EDGE_CASES = {
+        "0", "-0", "0.0", "-0.0", "1", "1.", ".5", "-.5", "+.5", ".", "-", "", " 2.5 ", "\t3\n", "12.75", "-12.75",
+        "0.1", "0.3", "123456789.123456789", "9007199254740993", "1e10", "1E-10", "1e", "1e+", "1.5e308", "1e309",
+        "4.9e-324", "1e-400", "NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "infinity", "1d", "1f", "1.5F", "1D",
+        "0x1p3", "0X1.8P1", "0x1", "0x1.8", "1_000", "1,5", "abc", "1.2.3", "\u0661"
+    };
+
+    @Test
+    public void integersMatchTheJdk() {
+        for(String value : LONG_EDGE_CASES) {
+            assertSameOutcome(value, jdkInteger(value), ValueParser.parseInteger(value));
+            assertSameOutcome(value, jdkLong(value), ValueParser.parseLong(value));
+        }
+    }
+
+    @Test
+    public void randomIntegersMatchTheJdk() {
+        Random random = new Random(42);
+        for(int i=0; i<100000; i++) {
+            String value = Long.toString(random.nextLong() >> random.nextInt(64));
+            assertSameOutcome(value, jdkInteger(value), ValueParser.parseInteger(value));
+            assertSameOutcome(value, jdkLong(value), ValueParser.parseLong(value));
+        }
+    }
+
+    @Test
+    public void floatingPointMatchesTheJdk() {
+        for(String value : DOUBLE_EDGE_CASES) {
+            assertSameOutcome(value, jdkDouble(value), ValueParser.parseDouble(value));
+            assertSameOutcome(value, jdkFloat(value), ValueParser.parseFloat(value));
+        }
+    }
+
+    @Test
+    public void randomDecimalsMatchTheJdk() {
+        Random random = new Random(42);
+        for(int i=0; i<100000; i++) {
+            String value = (random.nextBoolean() ? "-" : "")+random.nextInt(100000)+"."+random.nextInt(100000);
+            assertSameOutcome(value, jdkDouble(value), ValueParser.parseDouble(value));
+            assertSameOutcome(value, jdkFloat(value), ValueParser.parseFloat(value));
+        }
+    }
+
+    @Test
+    public void durationUnits() {
+        assertEquals(Duration.ofNanos(5), ValueParser.parseDuration("5ns").boxed);
+        assertEquals(Duration.ofNanos(5000), ValueParser.parseDuration("5us").boxed);
+        assertEquals(Duration.ofMillis(500), ValueParser.parseDuration("500ms").boxed);
+        assertEquals(Duration.ofMillis(500), ValueParser.parseDuration("500").boxed);
+        assertEquals(Duration.ofSeconds(30), ValueParser.parseDuration(" 30S ").boxed);
+        assertEquals(Duration.ofMinutes(2), ValueParser.parseDuration("2m").boxed);
+        assertEquals(Duration.ofHours(-3), ValueParser.parseDuration("-3h").boxed);
+        assertEquals(Duration.ofDays(1), ValueParser.parseDuration("1 d").boxed);
+        assertEquals(Duration.ofNanos(Long.MAX_VALUE), ValueParser.parseDuration(Long.MAX_VALUE+"ns").boxed);
+        for(String invalid : new String[] {"", "ms", "5x", "5sec", "1.5s", "5 m s", "-", Long.MAX_VALUE+"ms", "106752d"}) {
+            assertSame(invalid, ParsedValue.INVALID, ValueParser.parseDuration(invalid));
+        }
+    }
+
+    @Test
+    public void sizeUnits() {
+        assertEquals(Long.valueOf(12), ValueParser.parseSize("12").boxed);
+        assertEquals(Long.valueOf(12), ValueParser.parseSize("12b").boxed);
+        assertEquals(Long.valueOf(2048), ValueParser.parseSize("2KB").boxed);
+        assertEquals(Long.valueOf(64L << 20), ValueParser.parseSize(" 64 mb ").boxed);
+        assertEquals(Long.valueOf(3L << 30), ValueParser.parseSize("3GB").boxed);
+        assertEquals(Long.valueOf(1L << 40), ValueParser.parseSize("1tb").boxed);
+        assertEquals(Long.valueOf(8388607L << 40), ValueParser.parseSize("8388607TB").boxed);
+        for(String invalid : new String[] {"", "KB", "-1KB", "+-1", "1.5MB", "1K", "1PB", "1MiB", "8388608TB"}) {
+            assertSame(invalid, ParsedValue.INVALID, ValueParser.parseSize(invalid));
+        }
+    }
+
+    private static void assertSameOutcome(String value, Object expected, ParsedValue parsed) {
+        if(expected==null) {
+            assertFalse("'"+value+"' should be invalid", parsed.isValid());
+        } else {
+            assertEquals("'"+value+"'", expected, parsed.boxed);
+        }
+    }
+
+    private static Object jdkInteger(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch(NumberFormatException nfEx) {
+            return null;
+        }
+    }
+
+    private static Object jdkLong(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch(NumberFormatException nfEx) {
+            return null;
+        }
+    }
+
+    private static Object jdkDouble(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch(NumberFormatException nfEx) {
+            return null;
+        }
+    }
+
+    private static Object jdkFloat(String value) {
+        try {
+            return Float.valueOf(value);
+        } catch(NumberFormatException nfEx) {
+            return null;
+        }
+    }
+}